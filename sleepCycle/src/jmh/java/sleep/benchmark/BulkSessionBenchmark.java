@@ -0,0 +1,101 @@
+package sleep.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sleep.Main;
+import sleep.dto.RegisterDto;
+import sleep.dto.SleepPersonDto;
+import sleep.dto.SleepSessionDto;
+import sleep.repository.UserRepository;
+import sleep.service.AuthService;
+import sleep.service.SleepSessionService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of creating sessions one by one with the bulk insert.
+ * The application runs against an embedded PostgreSQL, the score is reported in sessions per second.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkSessionBenchmark {
+
+    private static final int SESSIONS_PER_INVOCATION = 100;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private SleepSessionService sessionService;
+    private int personId;
+    private long nextStart = new Date().getTime() - 100L * 365 * DAY;
+
+    @Setup
+    public void setUp() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        context = new SpringApplication(Main.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true",
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--spring.jpa.show-sql=false",
+                "--spring.main.web-application-type=none",
+                "--logging.level.root=WARN");
+        sessionService = context.getBean(SleepSessionService.class);
+
+        RegisterDto registerDto = new RegisterDto();
+        registerDto.setUsername("benchmark");
+        registerDto.setPassword("benchmark");
+        registerDto.setSleepPersonDto(new SleepPersonDto());
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                .executeWithoutResult(status -> context.getBean(AuthService.class).register(registerDto));
+        personId = context.getBean(UserRepository.class).findByUsername("benchmark").get().getPerson().getId();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS_PER_INVOCATION)
+    public void createOneByOne() {
+        for (SleepSessionDto session : nextSessions()) {
+            sessionService.createSleepSession(session);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS_PER_INVOCATION)
+    public int createBulk() {
+        return sessionService.createSleepSessions(nextSessions(), personId).getCreated();
+    }
+
+    private List<SleepSessionDto> nextSessions() {
+        List<SleepSessionDto> sessions = new ArrayList<>(SESSIONS_PER_INVOCATION);
+        for (int i = 0; i < SESSIONS_PER_INVOCATION; i++) {
+            SleepSessionDto session = new SleepSessionDto();
+            session.setStartTime(new Date(nextStart));
+            session.setEndTime(new Date(nextStart + 8 * 60 * 60 * 1000L));
+            session.setDate(session.getStartTime());
+            session.setDuration(8 * 60 * 60 * 1000);
+            session.setPersonalEvaluation(7);
+            session.setPersonId(personId);
+            sessions.add(session);
+            nextStart += DAY;
+        }
+        return sessions;
+    }
+}
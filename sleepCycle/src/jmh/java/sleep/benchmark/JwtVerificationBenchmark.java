@@ -0,0 +1,65 @@
+package sleep.benchmark;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import sleep.security.JwtGenerator;
+import sleep.security.JwtKeyStore;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-request cost of reading the username from a JWT: building a new parser for every call,
+ * sharing one parser and the cache of verified tokens in {@link JwtGenerator}.
+ * The score is reported in microseconds per request.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private SecretKey key;
+    private JwtParser parser;
+    private String token;
+    private JwtGenerator jwtGenerator;
+    private String generatedToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = Jwts.SIG.HS512.key().build();
+        parser = Jwts.parser().verifyWith(key).build();
+        token = Jwts.builder()
+                .subject("benchmark")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 3600000))
+                .signWith(key)
+                .compact();
+        jwtGenerator = new JwtGenerator(new JwtKeyStore(Base64.getEncoder().encodeToString(new byte[64]), "", Duration.ofHours(24), Duration.ofHours(1)));
+        generatedToken = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("benchmark", null));
+    }
+
+    @Benchmark
+    public String newParserPerCall() {
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public String sharedParser() {
+        return parser.parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public String cachedVerification() {
+        return jwtGenerator.getUsernameFromJWT(generatedToken);
+    }
+}
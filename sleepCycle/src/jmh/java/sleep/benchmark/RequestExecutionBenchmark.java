@@ -0,0 +1,140 @@
+package sleep.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sleep.Main;
+import sleep.dto.RegisterDto;
+import sleep.dto.SleepPersonDto;
+import sleep.dto.SleepSessionDto;
+import sleep.security.CustomUserDetailsService;
+import sleep.security.JwtGenerator;
+import sleep.security.SleepUserDetails;
+import sleep.service.AuthService;
+import sleep.service.SleepSessionService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the REST API with Tomcat on its platform thread pool and on virtual threads.
+ * The application runs against an embedded PostgreSQL with the default pool sizes, the requests are sent by more
+ * concurrent clients than Tomcat has threads. The throughput is reported in requests per millisecond, the sample time
+ * with its percentiles (p0.99) in milliseconds per request.
+ *
+ * The concurrency limit in front of the API (see {@code ConcurrencyLimitFilter}) would reject most of the 400 clients
+ * with 503 and lower its limit as the latency grows, so the benchmark would measure the limiter instead of the
+ * executor. The limit is therefore pinned above the number of clients, every request reaches Tomcat's executor.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(1)
+public class RequestExecutionBenchmark {
+
+    private static final int SESSIONS = 365;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int CONCURRENCY_LIMIT = 1000;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest overviewRequest;
+    private HttpRequest sessionsByDateRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        context = new SpringApplication(Main.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--server.port=0",
+                "--sleep.concurrency-limit.api.initial-limit=" + CONCURRENCY_LIMIT,
+                "--sleep.concurrency-limit.min-limit=" + CONCURRENCY_LIMIT,
+                "--sleep.concurrency-limit.max-limit=" + CONCURRENCY_LIMIT,
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security=WARN");
+
+        RegisterDto registerDto = new RegisterDto();
+        registerDto.setUsername("benchmark");
+        registerDto.setPassword("benchmark");
+        registerDto.setSleepPersonDto(new SleepPersonDto());
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class))
+                .executeWithoutResult(status -> context.getBean(AuthService.class).register(registerDto));
+        SleepUserDetails userDetails = context.getBean(CustomUserDetailsService.class).loadUserByUsername("benchmark");
+        context.getBean(SleepSessionService.class).createSleepSessions(sessions(), userDetails.getPersonId());
+        String token = context.getBean(JwtGenerator.class)
+                .generateToken(new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+
+        String baseUrl = "http://localhost:" + ((ServletWebServerApplicationContext) context).getWebServer().getPort() + "/api/session/";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        overviewRequest = HttpRequest.newBuilder(URI.create(baseUrl + "overview"))
+                .header("Authorization", "Bearer " + token).build();
+        sessionsByDateRequest = HttpRequest.newBuilder(URI.create(baseUrl + "getByDate?startDate=" + LocalDate.now().minusMonths(1)
+                        + "&endDate=" + LocalDate.now() + "&pageSize=31"))
+                .header("Authorization", "Bearer " + token).build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public String overview() throws Exception {
+        return send(overviewRequest);
+    }
+
+    @Benchmark
+    public String sessionsByDate() throws Exception {
+        return send(sessionsByDateRequest);
+    }
+
+    private String send(HttpRequest request) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Status " + response.statusCode() + " für " + request.uri());
+        }
+        return response.body();
+    }
+
+    private static List<SleepSessionDto> sessions() {
+        List<SleepSessionDto> sessions = new ArrayList<>(SESSIONS);
+        long start = new Date().getTime() - SESSIONS * DAY;
+        for (int i = 0; i < SESSIONS; i++) {
+            SleepSessionDto session = new SleepSessionDto();
+            session.setStartTime(new Date(start));
+            session.setEndTime(new Date(start + 8 * 60 * 60 * 1000L));
+            session.setDate(session.getStartTime());
+            session.setDuration(8 * 60 * 60 * 1000);
+            session.setPersonalEvaluation(7);
+            sessions.add(session);
+            start += DAY;
+        }
+        return sessions;
+    }
+}
@@ -0,0 +1,39 @@
+package sleep;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in execution of the requests and the asynchronous work on virtual threads, enabled with
+ * {@code spring.threads.virtual.enabled}, the property Spring Boot reads itself from 3.2 on.
+ *
+ * Tomcat starts a virtual thread for every request instead of taking one of the {@code server.tomcat.threads.max}
+ * platform threads, so a request waiting for JDBC or the password hashing pool no longer blocks a thread of the server.
+ * The number of concurrent database calls is then limited by the connection pool only
+ * ({@code spring.datasource.hikari.maximum-pool-size}). The application task executor, used by {@code @Async} methods
+ * and asynchronous requests like the session export, starts a virtual thread per task as well.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tomcat-handler-", 0).factory()));
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("task-", 0).factory()));
+    }
+}
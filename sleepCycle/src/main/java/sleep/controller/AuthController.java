@@ -1,6 +1,8 @@
 package sleep.controller;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,23 +12,36 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import sleep.dto.AuthResponseDto;
 import sleep.dto.LoginDto;
+import sleep.dto.RefreshTokenDto;
 import sleep.dto.RegisterDto;
+import sleep.dto.RotatedRefreshToken;
+import sleep.exceptions.InvalidRefreshTokenException;
+import sleep.exceptions.PasswordHashingOverloadedException;
 import sleep.repository.RoleRepository;
 import sleep.repository.UserRepository;
+import sleep.security.CustomUserDetailsService;
+import sleep.security.JWTAuthenticationFilter;
 import sleep.security.JwtGenerator;
+import sleep.security.SleepUserDetails;
+import sleep.security.TokenRevocationStore;
+import sleep.security.VerifiedToken;
 import sleep.service.AuthService;
+import sleep.service.RefreshTokenService;
 
 /**
  * Rest Controller for managing authentication.
  *
- * Provides endpoints for register, login and logout of a user.
+ * Provides endpoints for register, login, refresh and logout of a user.
+ * The short-lived JWT is renewed with a rotating refresh token, which is only sent to the auth endpoints.
  */
 @RestController
 @RequestMapping("/api/auth/")
@@ -34,20 +49,32 @@ public class AuthController {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
+    static final String AUTH_COOKIE = "auth_token";
+    static final String REFRESH_COOKIE = "refresh_token";
+    private static final String REFRESH_COOKIE_PATH = "/api/auth/";
+
     private AuthenticationManager authenticationManager;
     private UserRepository userRepository;
     private RoleRepository roleRepository;
     private PasswordEncoder passwordEncoder;
     private JwtGenerator jwtGenerator;
     private AuthService authService;
+    private RefreshTokenService refreshTokenService;
+    private CustomUserDetailsService userDetailsService;
+    private TokenRevocationStore tokenRevocationStore;
 
-    public AuthController(final AuthenticationManager authenticationManager, final UserRepository userRepository, final RoleRepository roleRepository, final PasswordEncoder passwordEncoder, final JwtGenerator jwtGenerator, final AuthService authService) {
+    public AuthController(final AuthenticationManager authenticationManager, final UserRepository userRepository, final RoleRepository roleRepository, final PasswordEncoder passwordEncoder, final JwtGenerator jwtGenerator, final AuthService authService,
+                          final RefreshTokenService refreshTokenService, final CustomUserDetailsService userDetailsService,
+                          final TokenRevocationStore tokenRevocationStore) {
         this.authenticationManager = authenticationManager;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtGenerator = jwtGenerator;
         this.authService = authService;
+        this.refreshTokenService = refreshTokenService;
+        this.userDetailsService = userDetailsService;
+        this.tokenRevocationStore = tokenRevocationStore;
     }
 
     /**
@@ -55,6 +82,7 @@ public class AuthController {
      *
      * @param registerDto DTO containing user registration details.
      * @return ResponseEntity with success or error message and appropriate HTTP status code.
+     * @throws PasswordHashingOverloadedException If the password can't be hashed right now, answered with 503.
      */
     @PostMapping("register")
     public ResponseEntity<String> register(@RequestBody RegisterDto registerDto) {
@@ -74,6 +102,9 @@ public class AuthController {
             authService.register(registerDto);
             logger.info("User '{}' erfolgreich registriert", registerDto.getUsername());
             return new ResponseEntity<>("User wurde erfolgreich erstellt", HttpStatus.CREATED);
+        } catch (PasswordHashingOverloadedException e) {
+            logger.warn("Registrierung für den User '{}' abgelehnt: {}", registerDto.getUsername(), e.getMessage());
+            throw e;
         } catch (Exception e) {
             logger.error("Registrierung fehlgeschlagen für den User '{}': {}", registerDto.getUsername(), e.getMessage(), e);
             return new ResponseEntity<>("Ein Fehler ist aufgetreten", HttpStatus.INTERNAL_SERVER_ERROR);
@@ -81,11 +112,12 @@ public class AuthController {
     }
 
     /**
-     * Authenticates a user and returns a JWT token.
+     * Authenticates a user and returns a JWT token and a refresh token.
      *
      * @param loginDto DTO containing username and password.
-     * @param response HTTP response for setting the authentication cookie.
+     * @param response HTTP response for setting the authentication and refresh cookies.
      * @return ResponseEntity with AuthResponseDto containing the JWT token, or an error status.
+     * @throws PasswordHashingOverloadedException If the password can't be checked right now, answered with 503.
      */
     @PostMapping("login")
     public ResponseEntity<AuthResponseDto> login(@RequestBody LoginDto loginDto, HttpServletResponse response) {
@@ -105,15 +137,20 @@ public class AuthController {
             logger.debug("Generiere JWT Token für User: {}", loginDto.getUsername());
 
             // set cookie
-            Cookie cookie = new Cookie("auth_token", token);
-            cookie.setHttpOnly(true);
-            cookie.setSecure(false);
-            cookie.setPath("/");
-            cookie.setMaxAge(1200); // 20 minutes
-            response.addCookie(cookie);
+            response.addCookie(authCookie(token));
             logger.info("Auth Token cookie für User: {} gesetzt", loginDto.getUsername());
 
-            return new ResponseEntity<>(new AuthResponseDto(token), HttpStatus.OK);
+            String refreshToken = null;
+            if (authentication.getPrincipal() instanceof SleepUserDetails user) {
+                refreshToken = refreshTokenService.createRefreshToken(user.getUserId());
+                response.addCookie(refreshCookie(refreshToken, (int) refreshTokenService.getLifetime().toSeconds()));
+                logger.debug("Refresh Token cookie für User: {} gesetzt", loginDto.getUsername());
+            }
+
+            return new ResponseEntity<>(new AuthResponseDto(token, refreshToken), HttpStatus.OK);
+        } catch (PasswordHashingOverloadedException e) {
+            logger.warn("Login für User '{}' abgelehnt: {}", loginDto.getUsername(), e.getMessage());
+            throw e;
         } catch (Exception e) {
             logger.error("Login fehlgeschlagen für User '{}': {}", loginDto.getUsername(), e.getMessage());
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
@@ -121,23 +158,97 @@ public class AuthController {
     }
 
     /**
-     * Logs out a user by invalidating the authentication cookie.
+     * Issues a new JWT token for a valid refresh token without asking for the password again.
+     * The refresh token is rotated, the old one can't be used anymore. The new JWT token is only issued
+     * if the user still exists and has a person, the claims of the token are taken from the current user.
      *
-     * @param response HTTP response to clear the authentication cookie.
+     * @param refreshCookie The refresh token from the cookie set on login.
+     * @param refreshTokenDto DTO containing the refresh token, for clients that don't use cookies.
+     * @param response HTTP response for setting the new authentication and refresh cookies.
+     * @return ResponseEntity with AuthResponseDto containing the new tokens, or 401 if the refresh token isn't valid.
+     */
+    @PostMapping("refresh")
+    public ResponseEntity<AuthResponseDto> refresh(@CookieValue(value = REFRESH_COOKIE, required = false) String refreshCookie,
+                                                   @RequestBody(required = false) RefreshTokenDto refreshTokenDto,
+                                                   HttpServletResponse response) {
+        String refreshToken = refreshTokenDto != null && refreshTokenDto.getRefreshToken() != null
+                ? refreshTokenDto.getRefreshToken() : refreshCookie;
+        if (refreshToken == null) {
+            logger.debug("Refresh ohne Refresh Token aufgerufen");
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+
+        try {
+            RotatedRefreshToken rotated = refreshTokenService.rotate(refreshToken);
+            SleepUserDetails user = userDetailsService.loadUserByUsername(rotated.getUsername());
+            if (user.getPersonId() == null) {
+                refreshTokenService.revoke(rotated.getRefreshToken());
+                throw new InvalidRefreshTokenException("Die Person des Refresh Tokens existiert nicht mehr");
+            }
+            String token = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+            response.addCookie(authCookie(token));
+            response.addCookie(refreshCookie(rotated.getRefreshToken(), (int) refreshTokenService.getLifetime().toSeconds()));
+            logger.debug("JWT Token für User: {} erneuert", rotated.getUsername());
+
+            return new ResponseEntity<>(new AuthResponseDto(token, rotated.getRefreshToken()), HttpStatus.OK);
+        } catch (InvalidRefreshTokenException | UsernameNotFoundException e) {
+            logger.info("Refresh fehlgeschlagen: {}", e.getMessage());
+            response.addCookie(refreshCookie(null, 0));
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+    }
+
+    /**
+     * Logs out a user by revoking the JWT token and the refresh token and invalidating their cookies.
+     * The JWT token is revoked as well, so a copy of it can't be used until it expires.
+     *
+     * @param request HTTP request containing the JWT token in the Authorization header or the cookie.
+     * @param refreshCookie The refresh token from the cookie set on login.
+     * @param response HTTP response to clear the authentication and refresh cookies.
      * @return ResponseEntity with a success message.
      */
     @PostMapping("logout")
-    public ResponseEntity<String> logout(HttpServletResponse response) {
+    public ResponseEntity<String> logout(HttpServletRequest request, @CookieValue(value = REFRESH_COOKIE, required = false) String refreshCookie, HttpServletResponse response) {
         logger.info("Logout wird aufgerufen und Auth Cookie gelöscht");
-        Cookie cookie = new Cookie("auth_token", null);
+        String token = JWTAuthenticationFilter.getJWTFromRequest(request);
+        if (token != null) {
+            try {
+                VerifiedToken verifiedToken = jwtGenerator.getVerifiedToken(token);
+                tokenRevocationStore.revoke(verifiedToken.getId(), verifiedToken.getExpiration());
+            } catch (JwtException | IllegalArgumentException e) {
+                logger.debug("Ungültiger JWT beim Logout wird nicht widerrufen: {}", e.getMessage());
+            }
+        }
+        if (refreshCookie != null) {
+            refreshTokenService.revoke(refreshCookie);
+        }
+        Cookie cookie = new Cookie(AUTH_COOKIE, null);
         cookie.setHttpOnly(true);
         cookie.setSecure(false);
         cookie.setPath("/");
         cookie.setMaxAge(0);
         response.addCookie(cookie);
+        response.addCookie(refreshCookie(null, 0));
 
         return ResponseEntity.ok("Logout erfolgreich");
     }
 
+    private static Cookie authCookie(String token) {
+        Cookie cookie = new Cookie(AUTH_COOKIE, token);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(false);
+        cookie.setPath("/");
+        cookie.setMaxAge(1200); // 20 minutes
+        return cookie;
+    }
 
+    private static Cookie refreshCookie(String refreshToken, int maxAge) {
+        Cookie cookie = new Cookie(REFRESH_COOKIE, refreshToken);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(false);
+        cookie.setPath(REFRESH_COOKIE_PATH);
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
 }
@@ -0,0 +1,57 @@
+package sleep.controller;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import sleep.repository.QueryCountListener;
+import sleep.repository.QueryCountListener.Counts;
+
+import java.io.IOException;
+
+/**
+ * Publishes the number of SQL statements and connection checkouts of every request per endpoint as
+ * {@code http.server.requests.statements} and {@code http.server.requests.connections}, tagged with the method
+ * and the URI pattern like {@code http.server.requests}. Runs before the security filters, so the statements
+ * of the authentication are included.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class QueryCountFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryCountFilter.class);
+
+    private MeterRegistry meterRegistry;
+
+    public QueryCountFilter(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        QueryCountListener.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Counts counts = QueryCountListener.stop();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            summary("http.server.requests.statements", request.getMethod(), uri).record(counts.getStatements());
+            summary("http.server.requests.connections", request.getMethod(), uri).record(counts.getConnections());
+            logger.debug("{} {}: {} Statements, {} Verbindungen", request.getMethod(), uri, counts.getStatements(), counts.getConnections());
+        }
+    }
+
+    private DistributionSummary summary(String name, String method, String uri) {
+        return DistributionSummary.builder(name).tag("method", method).tag("uri", uri).register(meterRegistry);
+    }
+}
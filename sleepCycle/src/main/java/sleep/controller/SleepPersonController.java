@@ -1,8 +1,6 @@
 package sleep.controller;
 
-import jakarta.persistence.EntityNotFoundException;
 import jakarta.servlet.http.Cookie;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,14 +8,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import sleep.dto.SleepPersonDto;
-import sleep.models.SleepPerson;
-import sleep.models.User;
-import sleep.repository.UserRepository;
-import sleep.security.JwtGenerator;
+import sleep.security.AuthenticatedUser;
 import sleep.service.SleepPersonService;
 
-import static sleep.controller.HomeController.getJwtFromCookies;
-
 /**
  * Rest Controller for managing SleepPerson entities.
  *
@@ -30,13 +23,9 @@ public class SleepPersonController {
     private static final Logger logger = LoggerFactory.getLogger(SleepPersonController.class);
 
     private SleepPersonService personService;
-    private JwtGenerator jwtGenerator;
-    private UserRepository userRepository;
 
-    public SleepPersonController(final SleepPersonService personService, final JwtGenerator jwtGenerator, final UserRepository userRepository) {
+    public SleepPersonController(final SleepPersonService personService) {
         this.personService = personService;
-        this.jwtGenerator = jwtGenerator;
-        this.userRepository = userRepository;
     }
 
 //    @GetMapping("{id}")
@@ -54,24 +43,16 @@ public class SleepPersonController {
      *
      * @param person DTO containing the updated attributes for the SleepPerson.
      * @param personId ID of the SleepPerson to be updated.
-     * @param request HTTP request containing user session details.
+     * @param user The authenticated user, who must own the SleepPerson.
      * @return ResponseEntity containing the updated SleepPerson DTO if successful,
      *         or an empty DTO with an appropriate HTTP status in case of failure.
      */
     @PutMapping("{id}/update")
-    public ResponseEntity<SleepPersonDto> updateSleepPerson(@RequestBody SleepPersonDto person, @PathVariable("id") int personId, HttpServletRequest request){
+    public ResponseEntity<SleepPersonDto> updateSleepPerson(@RequestBody SleepPersonDto person, @PathVariable("id") int personId, AuthenticatedUser user){
         logger.info("Update SleepPerson mit der Id {}", personId);
-        String token = getJwtFromCookies(request);
-        if (token != null) {
-            String username = jwtGenerator.getUsernameFromJWT(token);
-            try {
-                SleepPerson sleepPerson = userRepository.findByUsername(username)
-                        .filter(user -> user.getPerson() != null && user.getPerson().getId() == personId)
-                        .map(User::getPerson)
-                        .orElseThrow(() -> new EntityNotFoundException("Benutzer oder zugehörige Person nicht gefunden"));
-            }
-            catch (EntityNotFoundException e) {
-                logger.error("Benutzer konnte nicht gefunden werden",e.getMessage());
+        if (user != null) {
+            if (!ownsPerson(user, personId)) {
+                logger.error("Die Person mit der Id {} gehört nicht zum User {}", personId, user.getUsername());
                 return new ResponseEntity<>(new SleepPersonDto(), HttpStatus.NOT_FOUND);
             }
             SleepPersonDto sleepPersonDto = personService.updateSleepPerson(person, personId);
@@ -87,19 +68,14 @@ public class SleepPersonController {
      *
      * @param personId ID of the SleepPerson to be deleted.
      * @param response HTTP response used to remove the authentication cookie.
+     * @param user The authenticated user, who must own the SleepPerson.
      * @return ResponseEntity with success or error message and appropriate HTTP status code.
      */
     @PostMapping("{id}/delete")
-    public ResponseEntity<String> deleteSleepPerson(@PathVariable("id") int personId, HttpServletResponse response, HttpServletRequest request){
+    public ResponseEntity<String> deleteSleepPerson(@PathVariable("id") int personId, HttpServletResponse response, AuthenticatedUser user){
         logger.info("Löschen der SleepPerson mit der Id {}", personId);
         try {
-            String token = getJwtFromCookies(request);
-            if (token != null) {
-                String username = jwtGenerator.getUsernameFromJWT(token);
-                userRepository.findByUsername(username)
-                        .filter(user -> user.getPerson() != null && user.getPerson().getId() == personId)
-                        .map(User::getPerson)
-                        .orElseThrow(() -> new EntityNotFoundException("Benutzer oder zugehörige Person nicht gefunden"));
+            if (user != null && ownsPerson(user, personId)) {
                 personService.deleteSleepPerson(personId);
                 Cookie cookie = new Cookie("auth_token", null);
                 cookie.setHttpOnly(true);
@@ -117,6 +93,10 @@ public class SleepPersonController {
         }
     }
 
+    private static boolean ownsPerson(AuthenticatedUser user, int personId) {
+        return user.getPersonId() != null && user.getPersonId() == personId;
+    }
+
 //    @GetMapping("{id}/getSessions")
 //    public ResponseEntity<SleepSessionResponse> getAllSessions(@PathVariable Integer id,
 //                                               @RequestParam(value = "pageNo", defaultValue = "0", required = false) int pageNo,
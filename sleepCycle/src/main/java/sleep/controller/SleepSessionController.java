@@ -1,30 +1,38 @@
 package sleep.controller;
 
-import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import sleep.dto.BulkSessionResponse;
+import sleep.dto.ExportFormat;
+import sleep.dto.OverviewStatsDto;
+import sleep.dto.SessionImportResponse;
 import sleep.dto.SleepSessionDto;
 import sleep.dto.SleepSessionResponse;
-import sleep.models.SleepPerson;
+import sleep.exceptions.InvalidCursorException;
 import sleep.models.SleepSession;
-import sleep.models.User;
 import sleep.repository.SleepSessionRepository;
-import sleep.repository.UserRepository;
-import sleep.security.JwtGenerator;
+import sleep.security.AuthenticatedUser;
 import sleep.service.SleepPersonService;
+import sleep.service.SleepSessionExportService;
+import sleep.service.SleepSessionImportService;
 import sleep.service.SleepSessionService;
+import sleep.service.SleepStatsService;
 
-import java.time.LocalDate;
-import java.time.ZoneId;
+import java.io.InputStream;
 import java.util.Date;
+import java.util.List;
 
-import static sleep.controller.HomeController.*;
+import static sleep.service.SleepSessionService.convertToDateWithTimeZone;
+import static sleep.service.SleepSessionService.setAttributesForSessionDto;
 
 /**
  * Rest Controller for managing SleepSession entities.
@@ -40,18 +48,22 @@ public class SleepSessionController {
 
     private static final Logger logger = LoggerFactory.getLogger(SleepSessionController.class);
 
+    static final int MAX_BULK_SIZE = 1000;
+
     private SleepSessionRepository sleepSessionRepository;
     private SleepSessionService sessionService;
-    private JwtGenerator jwtGenerator;
-    private UserRepository userRepository;
     private SleepPersonService personService;
+    private SleepStatsService statsService;
+    private SleepSessionExportService exportService;
+    private SleepSessionImportService importService;
 
-    public SleepSessionController(final SleepSessionService sessionService, final JwtGenerator jwtGenerator, final UserRepository userRepository, final SleepSessionRepository sleepSessionRepository, final SleepPersonService personService) {
+    public SleepSessionController(final SleepSessionService sessionService, final SleepSessionRepository sleepSessionRepository, final SleepPersonService personService, final SleepStatsService statsService, final SleepSessionExportService exportService, final SleepSessionImportService importService) {
         this.sessionService = sessionService;
-        this.jwtGenerator = jwtGenerator;
-        this.userRepository = userRepository;
         this.sleepSessionRepository = sleepSessionRepository;
         this.personService = personService;
+        this.statsService = statsService;
+        this.exportService = exportService;
+        this.importService = importService;
     }
 
 //    @GetMapping("{id}")
@@ -62,34 +74,44 @@ public class SleepSessionController {
     /**
      * Selects a list of sessions in between a start and end date.
      *
-     * @param request HTTP request containing user session details.
-     * @param model Model object to pass data to the view.
+     * Without a cursor the sessions are paginated by page number. If the parameter cursor is present
+     * (empty for the first page), keyset pagination is used and the response contains the cursor of the next page.
+     * Keyset pages are ordered by start time and leave out sessions without a start time.
+     * The page size is capped by the server.
+     *
+     * @param user The authenticated user.
      * @param startDate Start date to select a list of sessions.
      * @param endDate End date to select a list of sessions.
      * @param pageNo The page number to retrieve.
      * @param pageSize The number of sessions per page.
+     * @param cursor The cursor of the previous page in keyset mode.
      * @return A list of sessions.
      */
     @GetMapping("getByDate")
     @PreAuthorize( "isAuthenticated()")
-    public ResponseEntity<SleepSessionResponse> getSleepSessionsByDate(HttpServletRequest request, Model model,
+    public ResponseEntity<SleepSessionResponse> getSleepSessionsByDate(AuthenticatedUser user,
                                                                        @RequestParam(value = "startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date startDate,
                                                                        @RequestParam(value = "endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date endDate,
                                                                        @RequestParam(value = "pageNo", defaultValue = "0", required = false) int pageNo,
-                                                                       @RequestParam(value = "pageSize", defaultValue = "10", required = false) int pageSize){
-        boolean loggedIn = isLoggedIn(request, model, jwtGenerator);
-        String token = getJwtFromCookies(request);
-        if (loggedIn) {
-            String username = jwtGenerator.getUsernameFromJWT(token);
-            User user = userRepository.findByUsername(username).get();
-            SleepPerson person = user.getPerson();
+                                                                       @RequestParam(value = "pageSize", defaultValue = "10", required = false) int pageSize,
+                                                                       @RequestParam(value = "cursor", required = false) String cursor){
+        if (hasPerson(user)) {
+            String username = user.getUsername();
             try {
                 startDate = convertToDateWithTimeZone(startDate);
                 endDate = convertToDateWithTimeZone(endDate);
                 logger.info("Ermittle Daten für den Zeitraum {} bis {} für {}",startDate,endDate,username);
-                SleepSessionResponse response = personService.getAllSessionsByDateAndPersonId(startDate, endDate, person.getId(), pageNo, pageSize);
+                SleepSessionResponse response = cursor != null
+                        ? personService.getSessionsByDateAndPersonIdAfter(startDate, endDate, user.getPersonId(), cursor, pageSize)
+                        : personService.getAllSessionsByDateAndPersonId(startDate, endDate, user.getPersonId(), pageNo, pageSize);
                 logger.info("Daten für {} erfolgreich selektiert", username);
                 return new ResponseEntity<>(response, HttpStatus.OK);
+            } catch (InvalidCursorException e) {
+                logger.error("Ungültiger Cursor für {}: {}", username, cursor);
+                return new ResponseEntity<>(new SleepSessionResponse(), HttpStatus.BAD_REQUEST);
+            } catch (IllegalArgumentException e) {
+                logger.error("Ungültige Seitenangaben für {}: {}", username, e.getMessage());
+                return new ResponseEntity<>(new SleepSessionResponse(), HttpStatus.BAD_REQUEST);
             } catch (Exception e) {
                 logger.error("Fehler bei der Selektierung der Daten zwischen {} und {} für {}", startDate, endDate, username);
                 return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -100,19 +122,75 @@ public class SleepSessionController {
         }
     }
 
+    /**
+     * Selects the aggregated statistics of the authenticated user's sessions,
+     * e.g. the total sleep duration and the averages of the last 7 days, month and year.
+     *
+     * @param user The authenticated user.
+     * @return The overview statistics of the authenticated user.
+     */
+    @GetMapping("overview")
+    @PreAuthorize( "isAuthenticated()")
+    public ResponseEntity<OverviewStatsDto> getOverviewStats(AuthenticatedUser user){
+        if (hasPerson(user)) {
+            try {
+                logger.info("Ermittle die Übersichtsdaten für {}", user.getUsername());
+                return new ResponseEntity<>(statsService.getOverviewStats(user.getPersonId()), HttpStatus.OK);
+            } catch (Exception e) {
+                logger.error("Fehler bei der Ermittlung der Übersichtsdaten für {}", user.getUsername());
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        logger.error("Es ist kein gültiger User eingeloggt");
+        return new ResponseEntity<>(new OverviewStatsDto(), HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Exports all sessions of the authenticated user.
+     *
+     * The sessions are streamed to the client while they are read from the database,
+     * so the export needs the same memory for any number of sessions.
+     *
+     * @param format The format of the export, csv or ndjson.
+     * @param user The authenticated user.
+     * @return ResponseEntity streaming the sessions, or an appropriate HTTP status in case of failure.
+     */
+    @GetMapping("export")
+    @PreAuthorize( "isAuthenticated()")
+    public ResponseEntity<StreamingResponseBody> exportSleepSessions(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                                                     AuthenticatedUser user){
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unbekanntes Exportformat: {}", format);
+            return ResponseEntity.badRequest().build();
+        }
+        if (!hasPerson(user)) {
+            logger.error("Es ist kein gültiger User eingeloggt");
+            return ResponseEntity.badRequest().build();
+        }
+        int personId = user.getPersonId();
+        logger.info("Exportiere die Sessions von {} als {}", user.getUsername(), exportFormat);
+        StreamingResponseBody body = outputStream -> exportService.exportSessions(personId, exportFormat, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sessions." + exportFormat.getFileExtension() + "\"")
+                .body(body);
+    }
+
     /**
      * Creates SleepSession entity based on a DTO.
      *
      * @param session DTO containing the attributes for the SleepSession.
-     * @param request HTTP request containing user session details.
-     * @param model Model object to pass data to the view.
+     * @param user The authenticated user.
      * @return ResponseEntity containing the created SleepSession DTO if successful,
      *         or an empty DTO with an appropriate HTTP status in case of failure.
      */
     @PostMapping("create")
-    public ResponseEntity<SleepSessionDto> createSleepSession(@RequestBody SleepSessionDto session, HttpServletRequest request, Model model){
+    public ResponseEntity<SleepSessionDto> createSleepSession(@RequestBody SleepSessionDto session, AuthenticatedUser user){
         logger.info("Versuche Session zu erstellen: {}", session);
-        boolean personFound = setAttrWithAuthUser(request, session);
+        boolean personFound = setAttrWithAuthUser(user, session);
         if (personFound) {
             try {
                 SleepSessionDto sessionDto = sessionService.createSleepSession(session);
@@ -127,19 +205,90 @@ public class SleepSessionController {
         return new ResponseEntity<>(new SleepSessionDto(), HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * Creates several SleepSession entities of the authenticated user at once, e.g. from a wearable sync.
+     * The ownership is checked once for the whole request and every session is assigned to the user's person.
+     *
+     * @param sessions DTOs containing the attributes for the SleepSessions, a missing list is answered with 400.
+     * @param user The authenticated user.
+     * @return ResponseEntity containing the result of every session if successful,
+     *         or an empty response with an appropriate HTTP status in case of failure.
+     */
+    @PostMapping("bulk")
+    public ResponseEntity<BulkSessionResponse> createSleepSessions(@RequestBody(required = false) List<SleepSessionDto> sessions, AuthenticatedUser user){
+        if (sessions == null) {
+            logger.error("Es wurden keine Sessions übergeben");
+            return new ResponseEntity<>(new BulkSessionResponse(), HttpStatus.BAD_REQUEST);
+        }
+        logger.info("Versuche {} Sessions zu erstellen", sessions.size());
+        if (!hasPerson(user)) {
+            logger.error("Es konnte keine passende Person für die Sessions gefunden werden");
+            return new ResponseEntity<>(new BulkSessionResponse(), HttpStatus.BAD_REQUEST);
+        }
+        if (sessions.size() > MAX_BULK_SIZE) {
+            logger.error("Es dürfen höchstens {} Sessions auf einmal erstellt werden", MAX_BULK_SIZE);
+            return new ResponseEntity<>(new BulkSessionResponse(), HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        for (SleepSessionDto session : sessions) {
+            if (session != null) {
+                setAttributesForSessionDto(session);
+                session.setPersonId(user.getPersonId());
+            }
+        }
+        try {
+            BulkSessionResponse response = sessionService.createSleepSessions(sessions, user.getPersonId());
+            logger.info("{} Sessions erfolgreich erstellt", response.getCreated());
+            return new ResponseEntity<>(response, HttpStatus.CREATED);
+        } catch (Exception e) {
+            logger.error("Sessions konnten nicht erstellt werden", e);
+            return new ResponseEntity<>(new BulkSessionResponse(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Imports the session history of the authenticated user from a CSV file, e.g. from another sleep tracker.
+     * Sessions whose start time already exists for the user are skipped.
+     *
+     * @param file CSV file with a header line, startTime and endTime are required.
+     * @param user The authenticated user.
+     * @return ResponseEntity containing the number of imported, duplicate and rejected rows if successful,
+     *         or an empty response with an appropriate HTTP status in case of failure.
+     */
+    @PostMapping(value = "import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<SessionImportResponse> importSleepSessions(@RequestParam("file") MultipartFile file, AuthenticatedUser user){
+        logger.info("Versuche die Datei {} zu importieren", file.getOriginalFilename());
+        if (!hasPerson(user)) {
+            logger.error("Es konnte keine passende Person für den Import gefunden werden");
+            return new ResponseEntity<>(new SessionImportResponse(), HttpStatus.BAD_REQUEST);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            SessionImportResponse response = importService.importSessions(user.getPersonId(), inputStream);
+            logger.info("{} Sessions erfolgreich importiert", response.getImported());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.error("Die Datei konnte nicht gelesen werden: {}", e.getMessage());
+            SessionImportResponse response = new SessionImportResponse();
+            response.getErrors().add(e.getMessage());
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            logger.error("Sessions konnten nicht importiert werden", e);
+            return new ResponseEntity<>(new SessionImportResponse(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * the details of a SleepSession entity using the provided DTO.
      *
      * @param id ID of the SleepSession to be updated.
      * @param session DTO containing the updated attributes for the SleepSession.
-     * @param request HTTP request containing user session details.
+     * @param user The authenticated user.
      * @return ResponseEntity containing the updated SleepSession DTO if successful,
      *         or an empty DTO with an appropriate HTTP status in case of failure.
      */
     @PutMapping("{id}/update")
-    public ResponseEntity<SleepSessionDto> updateSleepSession(@PathVariable int id, @RequestBody SleepSessionDto session, HttpServletRequest request){
+    public ResponseEntity<SleepSessionDto> updateSleepSession(@PathVariable int id, @RequestBody SleepSessionDto session, AuthenticatedUser user){
         logger.info("Versuche Session mit der Id: {} zu updaten", id);
-        boolean personFound = setAttrWithAuthUser(request, session);
+        boolean personFound = setAttrWithAuthUser(user, session);
         if (personFound) {
             try {
                 SleepSessionDto sessionDto = sessionService.updateSleepSession(session,id);
@@ -158,15 +307,14 @@ public class SleepSessionController {
      * Deletes a SleepSession entity by its ID.
      *
      * @param id D of the SleepSession to be deleted.
-     * @param request HTTP request containing user session details.
+     * @param user The authenticated user.
      * @return ResponseEntity with success or error message and appropriate HTTP status code.
      */
     @PostMapping("{id}/delete")
-    public ResponseEntity<String> deleteSleepSession(@PathVariable("id") int id, HttpServletRequest request){
+    public ResponseEntity<String> deleteSleepSession(@PathVariable("id") int id, AuthenticatedUser user){
         logger.info("Versuche Session mit der Id: {} zu löschen", id);
-        User user = getAuthUser(request, jwtGenerator, userRepository);
         SleepSession session = sleepSessionRepository.findById(Long.valueOf(id)).orElse(null);
-        if (user != null && session != null && session.getPerson().getUser().getUsername().equals(user.getUsername())) {
+        if (hasPerson(user) && session != null && session.getPerson().getId() == user.getPersonId()) {
             try {
                 sessionService.deleteSleepSession(id);
                 return ResponseEntity.ok("Session wurde erfolgreich gelöscht");
@@ -179,47 +327,19 @@ public class SleepSessionController {
         return new ResponseEntity<>("Session konnte nicht gelöscht werden",HttpStatus.UNAUTHORIZED);
     }
 
-    /**
-     * Sets default attributes for a SleepSession DTO, including date and duration.
-     *
-     * If the date is null, it sets the date to the start time's timezone-adjusted value.
-     * Calculates the session duration based on the start and end times, if both are provided.
-     *
-     * @param dto The SleepSession DTO to be updated with default values.
-     * @return The updated SleepSession DTO.
-     */
-    private SleepSessionDto setAttributesForSessionDto(SleepSessionDto dto){
-        // if date null, set automatic date attr
-        if (dto.getDate() == null) {
-            dto.setDate(convertToDateWithTimeZone(dto.getStartTime()));
-        }
-        // calculate duration
-        if (dto.getStartTime() != null && dto.getEndTime() != null) {
-            dto.setDuration((int) Math.abs(dto.getEndTime().getTime() - dto.getStartTime().getTime()));
-        }
-
-        return dto;
-    }
-
-    private Date convertToDateWithTimeZone(Date date) {
-        if (date == null)
-            return new Date();
-        LocalDate localDate = date.toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDate();
-        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
-    }
-
-    private boolean setAttrWithAuthUser(HttpServletRequest request, SleepSessionDto session){
+    private boolean setAttrWithAuthUser(AuthenticatedUser user, SleepSessionDto session){
         setAttributesForSessionDto(session);
-        User user = getAuthUser(request, jwtGenerator, userRepository);
         SleepSession sessionObject = sleepSessionRepository.findById(Long.valueOf(session.getId())).orElse(null);
-        if (sessionObject != null & user != null && session != null && sessionObject.getPerson().getId() == user.getPerson().getId()) {
+        if (sessionObject != null & hasPerson(user) && session != null && sessionObject.getPerson().getId() == user.getPersonId()) {
             return true;
-        } else if (user != null && session != null){
-            session.setPersonId(user.getPerson().getId());
+        } else if (hasPerson(user) && session != null){
+            session.setPersonId(user.getPersonId());
             return true;
         }
         return false;
     }
+
+    private static boolean hasPerson(AuthenticatedUser user) {
+        return user != null && user.getPersonId() != null;
+    }
 }
\ No newline at end of file
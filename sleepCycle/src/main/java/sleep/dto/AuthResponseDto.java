@@ -6,8 +6,14 @@ import lombok.Data;
 public class AuthResponseDto {
     private String token;
     private String tokenType = "Bearer ";
+    private String refreshToken;
 
     public AuthResponseDto(String token) {
         this.token = token;
     }
+
+    public AuthResponseDto(String token, String refreshToken) {
+        this.token = token;
+        this.refreshToken = refreshToken;
+    }
 }
@@ -0,0 +1,12 @@
+package sleep.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkSessionResponse {
+    private int created;
+    private int rejected;
+    private List<BulkSessionResult> results;
+}
@@ -0,0 +1,20 @@
+package sleep.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkSessionResult {
+
+    public enum Status {
+        CREATED, REJECTED
+    }
+
+    private int index;
+    private Status status;
+    private Integer id;
+    private String message;
+}
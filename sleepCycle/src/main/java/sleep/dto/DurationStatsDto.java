@@ -0,0 +1,14 @@
+package sleep.dto;
+
+import lombok.Data;
+
+@Data
+public class DurationStatsDto {
+    private long sessionCount;
+    private long sumDuration;
+    private double sumDurationSq;
+    private long sumCycles;
+    private long sumCyclesSq;
+    private long sumDurationCycles;
+    private long badSessions;
+}
@@ -0,0 +1,15 @@
+package sleep.dto;
+
+import lombok.Data;
+
+@Data
+public class OverviewStatsDto {
+    private long totalSessions;
+    private long totalDuration;
+    private Double avg7DaysDuration;
+    private Double avgMonthDuration;
+    private Double avgYearDuration;
+    private Double avg7DaysEvaluation;
+    private Double avgMonthEvaluation;
+    private Double avgYearEvaluation;
+}
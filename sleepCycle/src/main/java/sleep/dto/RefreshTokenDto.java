@@ -0,0 +1,8 @@
+package sleep.dto;
+
+import lombok.Data;
+
+@Data
+public class RefreshTokenDto {
+    private String refreshToken;
+}
@@ -0,0 +1,14 @@
+package sleep.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Result of rotating a refresh token: the user it belongs to and the new token replacing it.
+ */
+@Data
+@AllArgsConstructor
+public class RotatedRefreshToken {
+    private String username;
+    private String refreshToken;
+}
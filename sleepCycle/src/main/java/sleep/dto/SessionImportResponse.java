@@ -0,0 +1,15 @@
+package sleep.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class SessionImportResponse {
+    private long rows;
+    private long imported;
+    private long duplicates;
+    private long rejected;
+    private List<String> errors = new ArrayList<>();
+}
@@ -0,0 +1,42 @@
+package sleep.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import sleep.exceptions.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position of the last session of a page for keyset pagination.
+ * It is handed to the client as an opaque string and identifies the page following this position.
+ */
+@Data
+@AllArgsConstructor
+public class SleepSessionCursor {
+    private Date startTime;
+    private int id;
+
+    public String encode() {
+        String position = startTime.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor that has been created by {@link #encode()}.
+     *
+     * @param cursor The opaque cursor string.
+     * @return The decoded cursor.
+     * @throws InvalidCursorException if the cursor is not valid.
+     */
+    public static SleepSessionCursor decode(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return new SleepSessionCursor(new Date(Long.parseLong(position.substring(0, separator))), Integer.parseInt(position.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException("Ungültiger Cursor: " + cursor, e);
+        }
+    }
+}
@@ -12,4 +12,5 @@ public class SleepSessionResponse {
     private long totalElements;
     private int totalPages;
     private boolean last;
+    private String nextCursor;
 }
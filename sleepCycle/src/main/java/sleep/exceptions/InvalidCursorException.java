@@ -0,0 +1,9 @@
+package sleep.exceptions;
+
+public class InvalidCursorException extends RuntimeException{
+    private static final long serialVerisionUID = 1;
+
+    public InvalidCursorException(String message, Throwable cause){
+        super(message, cause);
+    }
+}
@@ -0,0 +1,9 @@
+package sleep.exceptions;
+
+public class InvalidRefreshTokenException extends RuntimeException{
+    private static final long serialVerisionUID = 1;
+
+    public InvalidRefreshTokenException(String message){
+        super(message);
+    }
+}
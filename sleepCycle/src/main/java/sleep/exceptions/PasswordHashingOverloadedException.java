@@ -0,0 +1,16 @@
+package sleep.exceptions;
+
+public class PasswordHashingOverloadedException extends RuntimeException{
+    private static final long serialVerisionUID = 1;
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingOverloadedException(String message, long retryAfterSeconds){
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,30 @@
+package sleep.models;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * The optimization result of a person precomputed by the nightly batch.
+ */
+@Entity
+@Table(name = "optimization_result")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OptimizationResult {
+    @Id
+    private int personId;
+    private Long duration;
+    private Long durationLowerBound;
+    private Long durationUpperBound;
+    private String message;
+    private String durationMessage;
+    private Date computedAt;
+    private boolean stale;
+}
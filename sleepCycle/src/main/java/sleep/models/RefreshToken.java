@@ -0,0 +1,33 @@
+package sleep.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Server-side state of a refresh token. All tokens created by rotating the token of one login share a family.
+ */
+@Entity
+@Table(name = "refresh_token")
+@Data
+@NoArgsConstructor
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private User user;
+    private UUID family;
+    private String tokenHash;
+    private Date expiresAt;
+    private Date rotatedAt;
+    private boolean revoked;
+}
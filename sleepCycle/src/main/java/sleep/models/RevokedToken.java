@@ -0,0 +1,24 @@
+package sleep.models;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * An access token that was revoked before its expiry, identified by its jti claim.
+ */
+@Entity
+@Table(name = "revoked_token")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+    @Id
+    private String jti;
+    private Date expiresAt;
+}
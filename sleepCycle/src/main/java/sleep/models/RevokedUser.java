@@ -0,0 +1,25 @@
+package sleep.models;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * A user whose access tokens issued up to the revocation are rejected, until the last of them would have expired.
+ */
+@Entity
+@Table(name = "revoked_user")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedUser {
+    @Id
+    private Integer userId;
+    private Date revokedAt;
+    private Date expiresAt;
+}
@@ -13,7 +13,8 @@ import java.util.Date;
 @Data
 public class SleepSession {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sleep_session_seq")
+    @SequenceGenerator(name = "sleep_session_seq", sequenceName = "sleep_session_seq", allocationSize = 50)
     private int id;
     private Date startTime;
     private Date endTime;
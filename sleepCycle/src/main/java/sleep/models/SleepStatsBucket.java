@@ -0,0 +1,50 @@
+package sleep.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Rollup of the sleep sessions of one person within one day, week or month.
+ * The buckets are maintained incrementally whenever a session is created, updated or deleted.
+ */
+@Entity
+@Table(name = "sleep_stats_bucket")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class SleepStatsBucket {
+
+    public enum Granularity {
+        DAY, WEEK, MONTH
+    }
+
+    @Embeddable
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class BucketId implements Serializable {
+        @Column(name = "person_id")
+        private int personId;
+        @Enumerated(EnumType.STRING)
+        private Granularity granularity;
+        private LocalDate bucketStart;
+    }
+
+    @EmbeddedId
+    private BucketId id;
+    private int sessionCount;
+    private long sumDuration;
+    private long sumEvaluation;
+    private long sumCycles;
+    private double sumDurationSq;
+    private long sumCyclesSq;
+    private long sumDurationCycles;
+    private long badSessions;
+    private int durationCount;
+    private int evaluatedCount;
+}
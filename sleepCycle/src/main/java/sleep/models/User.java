@@ -3,12 +3,14 @@ package sleep.models;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import sleep.security.UserCacheEvictionListener;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
 @Table(name ="users")
+@EntityListeners(UserCacheEvictionListener.class)
 @Data
 @NoArgsConstructor
 public class User {
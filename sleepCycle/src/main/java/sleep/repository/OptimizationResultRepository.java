@@ -0,0 +1,36 @@
+package sleep.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.models.OptimizationResult;
+
+import java.util.Date;
+import java.util.Optional;
+
+public interface OptimizationResultRepository extends JpaRepository<OptimizationResult, Integer> {
+    @Query("SELECT r FROM OptimizationResult r WHERE r.personId = :personId AND r.stale = false AND r.computedAt >= :since")
+    Optional<OptimizationResult> findFresh(@Param("personId") int personId, @Param("since") Date since);
+
+    // upserts the row, so a batch holding the lock of the row is waited for and can't store a result computed
+    // from the sessions before this change
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO optimization_result (person_id, stale) VALUES (:personId, TRUE) " +
+            "ON CONFLICT (person_id) DO UPDATE SET stale = TRUE", nativeQuery = true)
+    void markStale(@Param("personId") int personId);
+
+    // creates or locks the row until the end of the transaction, so a concurrent session write waits for the result to be stored
+    @Modifying
+    @Query(value = "INSERT INTO optimization_result (person_id, stale) VALUES (:personId, TRUE) " +
+            "ON CONFLICT (person_id) DO UPDATE SET stale = optimization_result.stale", nativeQuery = true)
+    void lockForRecompute(@Param("personId") int personId);
+
+    @Modifying
+    @Query(value = "UPDATE optimization_result SET duration = :duration, duration_lower_bound = :lowerBound, duration_upper_bound = :upperBound, " +
+            "message = :message, duration_message = :durationMessage, computed_at = :computedAt, stale = FALSE WHERE person_id = :personId", nativeQuery = true)
+    void store(@Param("personId") int personId, @Param("duration") Long duration, @Param("lowerBound") Long lowerBound, @Param("upperBound") Long upperBound,
+               @Param("message") String message, @Param("durationMessage") String durationMessage, @Param("computedAt") Date computedAt);
+}
@@ -0,0 +1,71 @@
+package sleep.repository;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Counts the JDBC statements and connection checkouts of Hibernate on the current thread between
+ * {@link #start()} and {@link #stop()}. Registered for every session with {@code hibernate.session.events.auto}.
+ */
+public class QueryCountListener implements SessionEventListener {
+
+    /**
+     * The statements and connection checkouts counted on a thread.
+     */
+    public static final class Counts {
+        private long statements;
+        private long connections;
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getConnections() {
+            return connections;
+        }
+    }
+
+    private static final ThreadLocal<Counts> COUNTS = new ThreadLocal<>();
+
+    /**
+     * Starts counting on the current thread.
+     */
+    public static void start() {
+        COUNTS.set(new Counts());
+    }
+
+    /**
+     * Stops counting on the current thread.
+     *
+     * @return The counts since {@link #start()}, empty counts if counting wasn't started.
+     */
+    public static Counts stop() {
+        Counts counts = COUNTS.get();
+        COUNTS.remove();
+        return counts == null ? new Counts() : counts;
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.connections++;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        countStatement();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        countStatement();
+    }
+
+    private static void countStatement() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+}
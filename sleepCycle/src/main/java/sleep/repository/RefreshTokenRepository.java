@@ -0,0 +1,28 @@
+package sleep.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import sleep.models.RefreshToken;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+    boolean existsByFamilyAndRevokedFalse(UUID family);
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.revoked = true WHERE t.family = :family")
+    int revokeFamily(@Param("family") UUID family);
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.revoked = true WHERE t.user.id = :userId AND t.revoked = false")
+    int revokeAllOfUser(@Param("userId") int userId);
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.user.id = :userId AND t.expiresAt < :now")
+    int deleteExpiredOfUser(@Param("userId") int userId, @Param("now") Date now);
+}
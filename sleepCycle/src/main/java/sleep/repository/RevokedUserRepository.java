@@ -0,0 +1,18 @@
+package sleep.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import sleep.models.RevokedUser;
+
+import java.util.Date;
+import java.util.List;
+
+public interface RevokedUserRepository extends JpaRepository<RevokedUser, Integer> {
+    @Query("SELECT u FROM RevokedUser u WHERE u.expiresAt > :now")
+    List<RevokedUser> findActive(@Param("now") Date now);
+    @Modifying
+    @Query("DELETE FROM RevokedUser u WHERE u.expiresAt <= :now")
+    int deleteExpired(@Param("now") Date now);
+}
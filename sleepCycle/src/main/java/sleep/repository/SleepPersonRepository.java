@@ -1,7 +1,49 @@
 package sleep.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import sleep.models.SleepPerson;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
 public interface SleepPersonRepository extends JpaRepository<SleepPerson, Long> {
+
+    /**
+     * Projection of the range of the person ids.
+     */
+    interface IdRange {
+        Integer getMinId();
+        Integer getMaxId();
+        Long getPersonCount();
+    }
+
+    /**
+     * Projection of the columns of a person the batch jobs need, without loading its user.
+     */
+    interface PersonName {
+        Integer getId();
+        String getName();
+    }
+
+    /**
+     * Projection of the columns of a person shown on the pages, read without its user and sessions,
+     * so it can be rendered after the transaction ended.
+     */
+    interface PersonProfile {
+        Integer getId();
+        String getName();
+        String getEmail();
+        Date getBirthDate();
+        Integer getWeight();
+    }
+
+    @Query("SELECT p.id AS id, p.name AS name, p.email AS email, p.birthDate AS birthDate, p.weight AS weight FROM SleepPerson p WHERE p.id = :id")
+    Optional<PersonProfile> findProfileById(@Param("id") int id);
+    @Query(value = "SELECT MIN(id) AS \"minId\", MAX(id) AS \"maxId\", COUNT(*) AS \"personCount\" FROM sleep_person", nativeQuery = true)
+    IdRange idRange();
+    @Query(value = "SELECT id AS \"id\", name AS \"name\" FROM sleep_person WHERE id BETWEEN :fromId AND :toId ORDER BY id", nativeQuery = true)
+    List<PersonName> findNamesByIdBetween(@Param("fromId") int fromId, @Param("toId") int toId);
 }
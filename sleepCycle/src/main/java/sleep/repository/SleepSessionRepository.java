@@ -1,26 +1,34 @@
 package sleep.repository;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import sleep.models.SleepPerson;
 import sleep.models.SleepSession;
 
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface SleepSessionRepository extends JpaRepository<SleepSession, Long> {
+
     Page<SleepSession> findByPerson(SleepPerson person, Pageable pageable);
-    Page<SleepSession> findByDateBetweenAndPerson(Date startDate, Date endDate, SleepPerson person, Pageable pageable);    @Query(value = "SELECT SUM(duration) FROM sleep_session WHERE person_id = :personId", nativeQuery = true)
-    Long sumDurationByPersonId(@Param("personId") Long personId);
-    @Query(value = "SELECT AVG(duration) FROM sleep_session WHERE person_id = :personId AND CURRENT_TIMESTAMP > end_time AND :time < start_time", nativeQuery = true)
-    Double avgDurationFromTime(@Param("personId") Long personId, @Param("time") Date time);
-    @Query(value = "SELECT AVG(personal_evaluation) FROM sleep_session WHERE person_id = :personId AND CURRENT_TIMESTAMP > end_time AND :time < start_time", nativeQuery = true)
-    Double avgPersonalEvaluationFromTime(@Param("personId") Long personId, @Param("time") Date time);
-    @Query(value = "SELECT * FROM sleep_session WHERE person_id = :personId AND CURRENT_TIMESTAMP > CURRENT_TIMESTAMP - INTERVAL '2 MONTHS' ORDER BY personal_evaluation DESC FETCH FIRST 10 ROWS ONLY", nativeQuery = true)
-    List<SleepSession> sessionsOfLastTwoMonths(@Param("personId") Long personId);
-    @Query(value = "SELECT * FROM sleep_session WHERE person_id = :personId ORDER BY personal_evaluation DESC FETCH FIRST 10 ROWS ONLY", nativeQuery = true)
-    List<SleepSession> getAllSessions(@Param("personId") Long personId);
+    Page<SleepSession> findByDateBetweenAndPerson(Date startDate, Date endDate, SleepPerson person, Pageable pageable);
+    // keyset pagination on (start_time, id): a NULL start time can't be encoded in the cursor and never compares
+    // greater than it, so sessions without a start time are left out of both pages
+    @Query(value = "SELECT * FROM sleep_session WHERE person_id = :personId AND date BETWEEN :startDate AND :endDate AND start_time IS NOT NULL ORDER BY start_time, id LIMIT :limit", nativeQuery = true)
+    List<SleepSession> findFirstByDateBetweenAndPersonId(@Param("startDate") Date startDate, @Param("endDate") Date endDate, @Param("personId") int personId, @Param("limit") int limit);
+    @Query(value = "SELECT * FROM sleep_session WHERE person_id = :personId AND date BETWEEN :startDate AND :endDate AND start_time IS NOT NULL AND (start_time, id) > (:startTime, :id) ORDER BY start_time, id LIMIT :limit", nativeQuery = true)
+    List<SleepSession> findNextByDateBetweenAndPersonId(@Param("startDate") Date startDate, @Param("endDate") Date endDate, @Param("personId") int personId,
+                                                        @Param("startTime") Date startTime, @Param("id") int id, @Param("limit") int limit);
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SleepSession s WHERE s.person.id = :personId ORDER BY s.startTime, s.id")
+    Stream<SleepSession> streamByPersonId(@Param("personId") int personId);
 }
@@ -0,0 +1,147 @@
+package sleep.repository;
+
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import sleep.models.SleepStatsBucket;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+import static org.hibernate.jpa.SpecHints.HINT_SPEC_QUERY_TIMEOUT;
+
+public interface SleepStatsBucketRepository extends JpaRepository<SleepStatsBucket, SleepStatsBucket.BucketId> {
+
+    /**
+     * Projection of the aggregates shown on the personal overview page.
+     */
+    interface OverviewStats {
+        Long getTotalSessions();
+        Long getTotalDuration();
+        Double getAvg7DaysDuration();
+        Double getAvgMonthDuration();
+        Double getAvgYearDuration();
+        Double getAvg7DaysEvaluation();
+        Double getAvgMonthEvaluation();
+        Double getAvgYearEvaluation();
+    }
+
+    /**
+     * Projection of the sums the duration statistics of a time window are calculated from.
+     */
+    interface DurationStats {
+        Long getSessionCount();
+        Long getSumDuration();
+        Double getSumDurationSq();
+        Long getSumCycles();
+        Long getSumCyclesSq();
+        Long getSumDurationCycles();
+        Long getBadSessions();
+    }
+
+    // the overview query is cancelled on the database after this time, so it doesn't hold its connection when the
+    // database is slow, the page is shown with placeholders instead
+    String OVERVIEW_TIMEOUT_MILLIS = "2000";
+
+    String CYCLES_ESTIMATE = "COALESCE(cycles, CASE WHEN COALESCE(duration, 0) / 60000 < 395 THEN 4 WHEN COALESCE(duration, 0) / 60000 < 485 THEN 5 ELSE 6 END)";
+
+    String DURATION_SQUARED = "CAST(COALESCE(duration, 0) AS DOUBLE PRECISION) * COALESCE(duration, 0)";
+
+    String CYCLES_SQUARED = "(" + CYCLES_ESTIMATE + ") * (" + CYCLES_ESTIMATE + ")";
+
+    String DURATION_TIMES_CYCLES = "CAST(COALESCE(duration, 0) AS BIGINT) * " + CYCLES_ESTIMATE;
+
+    // sessions evaluated worse than 6 are bad
+    String BAD_SESSION = "CASE WHEN personal_evaluation < 6 THEN 1 ELSE 0 END";
+
+    String DURATION_STATS = "COALESCE(SUM(session_count), 0) AS \"sessionCount\", COALESCE(SUM(sum_duration), 0) AS \"sumDuration\", " +
+            "COALESCE(SUM(sum_duration_sq), 0) AS \"sumDurationSq\", COALESCE(SUM(sum_cycles), 0) AS \"sumCycles\", " +
+            "COALESCE(SUM(sum_cycles_sq), 0) AS \"sumCyclesSq\", COALESCE(SUM(sum_duration_cycles), 0) AS \"sumDurationCycles\", " +
+            "COALESCE(SUM(bad_sessions), 0) AS \"badSessions\"";
+
+    @Modifying
+    @Query(value = "INSERT INTO sleep_stats_bucket (person_id, granularity, bucket_start, session_count, sum_duration, sum_evaluation, sum_cycles, sum_duration_sq, sum_cycles_sq, sum_duration_cycles, bad_sessions, duration_count, evaluated_count) " +
+            "VALUES (:personId, 'DAY', :day, :sessionCount, :duration, :evaluation, :cycles, :durationSq, :cyclesSq, :durationCycles, :badSessions, :durationCount, :evaluatedCount), " +
+            "(:personId, 'WEEK', :week, :sessionCount, :duration, :evaluation, :cycles, :durationSq, :cyclesSq, :durationCycles, :badSessions, :durationCount, :evaluatedCount), " +
+            "(:personId, 'MONTH', :month, :sessionCount, :duration, :evaluation, :cycles, :durationSq, :cyclesSq, :durationCycles, :badSessions, :durationCount, :evaluatedCount) " +
+            "ON CONFLICT (person_id, granularity, bucket_start) DO UPDATE SET " +
+            "session_count = sleep_stats_bucket.session_count + EXCLUDED.session_count, " +
+            "sum_duration = sleep_stats_bucket.sum_duration + EXCLUDED.sum_duration, " +
+            "sum_evaluation = sleep_stats_bucket.sum_evaluation + EXCLUDED.sum_evaluation, " +
+            "sum_cycles = sleep_stats_bucket.sum_cycles + EXCLUDED.sum_cycles, " +
+            "sum_duration_sq = sleep_stats_bucket.sum_duration_sq + EXCLUDED.sum_duration_sq, " +
+            "sum_cycles_sq = sleep_stats_bucket.sum_cycles_sq + EXCLUDED.sum_cycles_sq, " +
+            "sum_duration_cycles = sleep_stats_bucket.sum_duration_cycles + EXCLUDED.sum_duration_cycles, " +
+            "bad_sessions = sleep_stats_bucket.bad_sessions + EXCLUDED.bad_sessions, " +
+            "duration_count = sleep_stats_bucket.duration_count + EXCLUDED.duration_count, " +
+            "evaluated_count = sleep_stats_bucket.evaluated_count + EXCLUDED.evaluated_count", nativeQuery = true)
+    void applyDelta(@Param("personId") int personId, @Param("day") LocalDate day, @Param("week") LocalDate week, @Param("month") LocalDate month,
+                    @Param("sessionCount") int sessionCount, @Param("duration") long duration, @Param("evaluation") long evaluation, @Param("cycles") long cycles,
+                    @Param("durationSq") double durationSq, @Param("cyclesSq") long cyclesSq, @Param("durationCycles") long durationCycles,
+                    @Param("badSessions") long badSessions, @Param("durationCount") int durationCount, @Param("evaluatedCount") int evaluatedCount);
+
+    @Modifying
+    @Query(value = "INSERT INTO sleep_stats_bucket (person_id, granularity, bucket_start, session_count, sum_duration, sum_evaluation, sum_cycles, sum_duration_sq, sum_cycles_sq, sum_duration_cycles, bad_sessions, duration_count, evaluated_count) " +
+            "SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE), COUNT(*), COALESCE(SUM(duration), 0), COALESCE(SUM(personal_evaluation), 0), SUM(" + CYCLES_ESTIMATE + "), " +
+            "SUM(" + DURATION_SQUARED + "), SUM(" + CYCLES_SQUARED + "), SUM(" + DURATION_TIMES_CYCLES + "), SUM(" + BAD_SESSION + "), COUNT(duration), COUNT(personal_evaluation) " +
+            "FROM sleep_session CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field) " +
+            "WHERE id IN (:sessionIds) AND person_id IS NOT NULL AND start_time IS NOT NULL " +
+            "GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE) " +
+            "ON CONFLICT (person_id, granularity, bucket_start) DO UPDATE SET " +
+            "session_count = sleep_stats_bucket.session_count + EXCLUDED.session_count, " +
+            "sum_duration = sleep_stats_bucket.sum_duration + EXCLUDED.sum_duration, " +
+            "sum_evaluation = sleep_stats_bucket.sum_evaluation + EXCLUDED.sum_evaluation, " +
+            "sum_cycles = sleep_stats_bucket.sum_cycles + EXCLUDED.sum_cycles, " +
+            "sum_duration_sq = sleep_stats_bucket.sum_duration_sq + EXCLUDED.sum_duration_sq, " +
+            "sum_cycles_sq = sleep_stats_bucket.sum_cycles_sq + EXCLUDED.sum_cycles_sq, " +
+            "sum_duration_cycles = sleep_stats_bucket.sum_duration_cycles + EXCLUDED.sum_duration_cycles, " +
+            "bad_sessions = sleep_stats_bucket.bad_sessions + EXCLUDED.bad_sessions, " +
+            "duration_count = sleep_stats_bucket.duration_count + EXCLUDED.duration_count, " +
+            "evaluated_count = sleep_stats_bucket.evaluated_count + EXCLUDED.evaluated_count", nativeQuery = true)
+    void addPersistedSessions(@Param("sessionIds") Collection<Integer> sessionIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM sleep_stats_bucket WHERE person_id = :personId AND session_count <= 0", nativeQuery = true)
+    void deleteEmptyBuckets(@Param("personId") int personId);
+
+    @Modifying
+    @Query(value = "DELETE FROM sleep_stats_bucket WHERE person_id = :personId", nativeQuery = true)
+    void deleteByPersonId(@Param("personId") int personId);
+
+    @QueryHints(@QueryHint(name = HINT_SPEC_QUERY_TIMEOUT, value = OVERVIEW_TIMEOUT_MILLIS))
+    @Query(value = "SELECT COALESCE(SUM(session_count) FILTER (WHERE granularity = 'MONTH'), 0) AS \"totalSessions\", " +
+            "COALESCE(SUM(sum_duration) FILTER (WHERE granularity = 'MONTH'), 0) AS \"totalDuration\", " +
+            "CAST(SUM(sum_duration) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :weekFrom) AS DOUBLE PRECISION) / NULLIF(SUM(duration_count) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :weekFrom), 0) AS \"avg7DaysDuration\", " +
+            "CAST(SUM(sum_duration) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :monthFrom) AS DOUBLE PRECISION) / NULLIF(SUM(duration_count) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :monthFrom), 0) AS \"avgMonthDuration\", " +
+            "CAST(SUM(sum_duration) FILTER (WHERE granularity = 'WEEK' AND bucket_start >= :yearFrom) AS DOUBLE PRECISION) / NULLIF(SUM(duration_count) FILTER (WHERE granularity = 'WEEK' AND bucket_start >= :yearFrom), 0) AS \"avgYearDuration\", " +
+            "CAST(SUM(sum_evaluation) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :weekFrom) AS DOUBLE PRECISION) / NULLIF(SUM(evaluated_count) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :weekFrom), 0) AS \"avg7DaysEvaluation\", " +
+            "CAST(SUM(sum_evaluation) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :monthFrom) AS DOUBLE PRECISION) / NULLIF(SUM(evaluated_count) FILTER (WHERE granularity = 'DAY' AND bucket_start >= :monthFrom), 0) AS \"avgMonthEvaluation\", " +
+            "CAST(SUM(sum_evaluation) FILTER (WHERE granularity = 'WEEK' AND bucket_start >= :yearFrom) AS DOUBLE PRECISION) / NULLIF(SUM(evaluated_count) FILTER (WHERE granularity = 'WEEK' AND bucket_start >= :yearFrom), 0) AS \"avgYearEvaluation\" " +
+            "FROM sleep_stats_bucket WHERE person_id = :personId AND (granularity = 'MONTH' OR bucket_start >= :yearFrom)", nativeQuery = true)
+    OverviewStats overviewStatsByPersonId(@Param("personId") int personId, @Param("weekFrom") LocalDate weekFrom, @Param("monthFrom") LocalDate monthFrom, @Param("yearFrom") LocalDate yearFrom);
+
+    @Query(value = "SELECT " + DURATION_STATS + " FROM sleep_stats_bucket WHERE person_id = :personId AND granularity = 'DAY' AND bucket_start >= :from", nativeQuery = true)
+    DurationStats durationStatsSince(@Param("personId") int personId, @Param("from") LocalDate from);
+
+    @Query(value = "SELECT " + DURATION_STATS + " FROM sleep_stats_bucket WHERE person_id = :personId AND granularity = 'MONTH'", nativeQuery = true)
+    DurationStats durationStats(@Param("personId") int personId);
+
+    @Query(value = "SELECT NOT EXISTS (SELECT 1 FROM sleep_stats_bucket) AND EXISTS (SELECT 1 FROM sleep_session WHERE person_id IS NOT NULL)", nativeQuery = true)
+    boolean needsRebuild();
+
+    @Modifying
+    @Query(value = "DELETE FROM sleep_stats_bucket", nativeQuery = true)
+    void deleteAllBuckets();
+
+    @Modifying
+    @Query(value = "INSERT INTO sleep_stats_bucket (person_id, granularity, bucket_start, session_count, sum_duration, sum_evaluation, sum_cycles, sum_duration_sq, sum_cycles_sq, sum_duration_cycles, bad_sessions, duration_count, evaluated_count) " +
+            "SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE), COUNT(*), COALESCE(SUM(duration), 0), COALESCE(SUM(personal_evaluation), 0), SUM(" + CYCLES_ESTIMATE + "), " +
+            "SUM(" + DURATION_SQUARED + "), SUM(" + CYCLES_SQUARED + "), SUM(" + DURATION_TIMES_CYCLES + "), SUM(" + BAD_SESSION + "), COUNT(duration), COUNT(personal_evaluation) " +
+            "FROM sleep_session CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field) " +
+            "WHERE person_id IS NOT NULL AND start_time IS NOT NULL " +
+            "GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE)", nativeQuery = true)
+    void rebuildFromSessions();
+}
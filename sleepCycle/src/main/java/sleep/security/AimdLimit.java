@@ -0,0 +1,87 @@
+package sleep.security;
+
+import java.time.Duration;
+
+/**
+ * Concurrency limit adjusted by additive increase and multiplicative decrease (AIMD) from the latency of the
+ * completed requests.
+ *
+ * A request completing within the latency threshold while at least half of the limit is in use raises the limit
+ * by one. A slower or failed request lowers it by the backoff ratio, but only once per round trip: requests that
+ * started before the last decrease don't lower it again, so a burst of slow requests doesn't collapse the limit.
+ * The limit stays between the minimum and the maximum.
+ */
+final class AimdLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private int limit;
+    private int inFlight;
+    private long lastDecreaseNanos = Long.MIN_VALUE;
+
+    /**
+     * @param initialLimit The limit before the first request completed.
+     * @param minLimit The lowest limit.
+     * @param maxLimit The highest limit.
+     * @param latencyThreshold Requests taking longer lower the limit.
+     * @param backoffRatio The factor the limit is multiplied with when it is lowered.
+     */
+    AimdLimit(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold, double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+    }
+
+    /**
+     * Takes a slot for a request.
+     *
+     * @return True if the request may run, false if the limit is reached.
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Returns the slot of a completed request and adjusts the limit.
+     *
+     * @param startNanos The {@link System#nanoTime()} the request started at.
+     * @param endNanos The {@link System#nanoTime()} the request completed at.
+     * @param failed True if the request failed, e.g. because no connection was available.
+     */
+    synchronized void release(long startNanos, long endNanos, boolean failed) {
+        int used = inFlight;
+        inFlight--;
+        if (failed || endNanos - startNanos > latencyThresholdNanos) {
+            if (startNanos > lastDecreaseNanos) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+                lastDecreaseNanos = endNanos;
+            }
+        } else if (used * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    /**
+     * Returns the slot of a completed request without adjusting the limit. Used for requests whose duration depends
+     * on the amount of data they transfer rather than on the load, e.g. an export streaming all sessions.
+     */
+    synchronized void releaseWithoutAdjusting() {
+        inFlight--;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
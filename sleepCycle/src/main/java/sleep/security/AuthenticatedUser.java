@@ -0,0 +1,28 @@
+package sleep.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+import java.util.List;
+
+/**
+ * The user authenticated for the current request. It is published once by the {@link JWTAuthenticationFilter}
+ * as request attribute and principal and handed to controller methods declaring a parameter of this type.
+ */
+@Data
+@AllArgsConstructor
+public class AuthenticatedUser implements AuthenticatedPrincipal {
+
+    static final String REQUEST_ATTRIBUTE = AuthenticatedUser.class.getName();
+
+    private String username;
+    private int userId;
+    private Integer personId;
+    private List<String> roles;
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
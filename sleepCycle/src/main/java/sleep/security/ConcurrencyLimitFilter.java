@@ -0,0 +1,171 @@
+package sleep.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Limits the concurrent requests of the REST API, the pages and the authentication separately, each with an
+ * {@link AimdLimit} adapting to the observed latency. When the database slows down the limits shrink, so the
+ * requests over the limit are answered right away with 503 and Retry-After instead of piling up while they wait for
+ * a connection. Static resources and the actuator aren't limited. The export, the import and the bulk creation take
+ * a slot like any API request, but as their duration grows with the number of sessions they don't adjust the limit.
+ * The current limits are published as {@code http.concurrency.limit}, the running requests as
+ * {@code http.concurrency.in-flight} and the rejected requests as {@code http.concurrency.rejected}, all with the
+ * group as tag.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    /**
+     * The groups of requests sharing a limit.
+     */
+    enum Group {
+        API, PAGES, AUTH;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Map<Group, AimdLimit> limits = new EnumMap<>(Group.class);
+    private final Map<Group, Counter> rejected = new EnumMap<>(Group.class);
+    private final long retryAfterSeconds;
+
+    /**
+     * @param meterRegistry The registry for the limit metrics.
+     * @param apiLimit The limit of /api/session/** and /api/person/**.
+     * @param pageLimit The limit of the pages.
+     * @param authLimit The limit of /api/auth/**.
+     * @param retryAfterSeconds The time rejected clients are asked to wait before trying again.
+     */
+    public ConcurrencyLimitFilter(MeterRegistry meterRegistry, AimdLimit apiLimit, AimdLimit pageLimit, AimdLimit authLimit, long retryAfterSeconds) {
+        this.limits.put(Group.API, apiLimit);
+        this.limits.put(Group.PAGES, pageLimit);
+        this.limits.put(Group.AUTH, authLimit);
+        this.retryAfterSeconds = retryAfterSeconds;
+        for (Map.Entry<Group, AimdLimit> entry : limits.entrySet()) {
+            String group = entry.getKey().tag();
+            Gauge.builder("http.concurrency.limit", entry.getValue(), AimdLimit::getLimit).tag("group", group).register(meterRegistry);
+            Gauge.builder("http.concurrency.in-flight", entry.getValue(), AimdLimit::getInFlight).tag("group", group).register(meterRegistry);
+            rejected.put(entry.getKey(), Counter.builder("http.concurrency.rejected").tag("group", group).register(meterRegistry));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Group group = groupOf(request);
+        if (group == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        AimdLimit limit = limits.get(group);
+        if (!limit.tryAcquire()) {
+            rejected.get(group).increment();
+            // counted by http.concurrency.rejected, under overload a warning per request would flood the log
+            logger.debug("Anfrage an {} abgelehnt, Limit von {} gleichzeitigen Anfragen erreicht", request.getRequestURI(), limit.getLimit());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return;
+        }
+        boolean adjusting = !isLongRunning(request);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                // e.g. the export streams the sessions after the handler returned
+                request.getAsyncContext().addListener(new ReleasingListener(limit, start, adjusting));
+            } else if (adjusting) {
+                limit.release(start, System.nanoTime(), failed);
+            } else {
+                limit.releaseWithoutAdjusting();
+            }
+        }
+    }
+
+    /**
+     * @param request The incoming HTTP request.
+     * @return The group of the request, null if it isn't limited.
+     */
+    static Group groupOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/api/auth/")) {
+            return Group.AUTH;
+        }
+        if (path.startsWith("/api/session/") || path.startsWith("/api/person/")) {
+            return Group.API;
+        }
+        if (path.startsWith("/api/") || path.startsWith("/css/") || path.startsWith("/js/") || path.startsWith("/images/")
+                || path.startsWith("/actuator") || path.startsWith("/error")) {
+            return null;
+        }
+        return Group.PAGES;
+    }
+
+    /**
+     * @param request The incoming HTTP request.
+     * @return True if the duration of the request grows with the amount of data it transfers, so its latency says
+     * nothing about the load.
+     */
+    static boolean isLongRunning(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.equals("/api/session/export") || path.equals("/api/session/import") || path.equals("/api/session/bulk");
+    }
+
+    private static class ReleasingListener implements AsyncListener {
+        private final AimdLimit limit;
+        private final long start;
+        private final boolean adjusting;
+        private volatile boolean failed;
+
+        ReleasingListener(AimdLimit limit, long start, boolean adjusting) {
+            this.limit = limit;
+            this.start = start;
+            this.adjusting = adjusting;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (!adjusting) {
+                limit.releaseWithoutAdjusting();
+                return;
+            }
+            HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
+            limit.release(start, System.nanoTime(), failed || response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
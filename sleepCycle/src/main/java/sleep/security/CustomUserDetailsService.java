@@ -2,7 +2,6 @@ package sleep.security;
 
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -18,17 +17,20 @@ import java.util.stream.Collectors;
  * Custom implementation of the UserDetailsService interface.
  * This service loads user-specific data (e.g., username, password, roles) from the database
  * and returns a Spring Security UserDetails object, which is used for authentication and authorization.
+ * Loaded users are kept in the {@link UserDetailsCache}, so an authenticated request doesn't query the database.
  */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
     private UserRepository userRepository;
+    private UserDetailsCache userDetailsCache;
 
-    public CustomUserDetailsService(final UserRepository userRepository) {
+    public CustomUserDetailsService(final UserRepository userRepository, final UserDetailsCache userDetailsCache) {
         this.userRepository = userRepository;
+        this.userDetailsCache = userDetailsCache;
     }
 
     /**
-     * Loads the user by username from the database.
+     * Loads the user by username from the cache or, on a miss, from the database.
      * This method is used by Spring Security to authenticate users based on their username.
      *
      * @param username The username of the user to be loaded.
@@ -36,9 +38,14 @@ public class CustomUserDetailsService implements UserDetailsService {
      * @throws UsernameNotFoundException If no user is found with the provided username.
      */
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    public SleepUserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return userDetailsCache.get(username, this::loadFromDatabase);
+    }
+
+    private SleepUserDetails loadFromDatabase(String username) {
         User user = userRepository.findByUsername(username).orElseThrow(() -> new UsernameNotFoundException(username));
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), mapRolesToAuthorities(user.getRoles()));
+        Integer personId = user.getPerson() != null ? user.getPerson().getId() : null;
+        return new SleepUserDetails(user.getUsername(), user.getPassword(), mapRolesToAuthorities(user.getRoles()), user.getId(), personId);
     }
 
     /**
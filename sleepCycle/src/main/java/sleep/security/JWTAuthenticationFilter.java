@@ -1,34 +1,58 @@
 package sleep.security;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Custom filter that processes JWT authentication for incoming requests.
- * It checks for a valid JWT token in the Authorization header and authenticates the user if the token is valid.
+ * It checks for a valid JWT token in the Authorization header or the auth_token cookie and authenticates the user
+ * if the token is valid. The token is verified only here, the resulting {@link AuthenticatedUser} is published
+ * for the rest of the request. It is taken from the claims of the token, only older tokens without them
+ * need the user to be loaded. Revoked tokens are rejected, see {@link TokenRevocationStore}.
+ *
+ * The person id and the roles in the claims aren't checked against the database. A token stays valid with them
+ * until it expires, unless its user is revoked: deleting the person and changing the roles revoke all tokens
+ * of the user issued until then. Other nodes pick up such a revocation only when they reload the revocations,
+ * so a token can still be used there with the old claims for up to {@code sleep.security.revocation.refresh-interval}
+ * (one minute by default). Without a revocation, claims can be stale for the lifetime of the token (20 minutes).
  */
 public class JWTAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(JWTAuthenticationFilter.class);
+
+    static final String AUTH_COOKIE = "auth_token";
+
     private JwtGenerator jwtGenerator;
     private CustomUserDetailsService customUserDetailsService;
+    private TokenRevocationStore tokenRevocationStore;
 
-    public JWTAuthenticationFilter(final JwtGenerator jwtGenerator, final CustomUserDetailsService customUserDetailsService) {
+    public JWTAuthenticationFilter(final JwtGenerator jwtGenerator, final CustomUserDetailsService customUserDetailsService, final TokenRevocationStore tokenRevocationStore) {
         this.jwtGenerator = jwtGenerator;
         this.customUserDetailsService = customUserDetailsService;
+        this.tokenRevocationStore = tokenRevocationStore;
     }
 
     /**
      * The main logic for filtering the incoming request and performing authentication.
      * This method is executed once per request and checks if a valid JWT token exists in the request.
+     * Requests with an invalid, expired or revoked token continue unauthenticated.
      *
      * @param request The incoming HTTP request.
      * @param response The HTTP response.
@@ -39,28 +63,89 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String token = getJWTFromRequest(request);
-        if (StringUtils.hasText(token) && jwtGenerator.validateToken(token)) {
-            String username = jwtGenerator.getUsernameFromJWT(token);
-            UserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
+        if (StringUtils.hasText(token)) {
+            AuthenticatedUser user = authenticate(token);
+            if (user != null) {
+                List<SimpleGrantedAuthority> authorities = user.getRoles().stream().map(SimpleGrantedAuthority::new).toList();
 
-            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+                request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, user);
+            }
         }
         filterChain.doFilter(request, response);
     }
 
     /**
-     * Extracts the JWT token from the Authorization header of the HTTP request.
+     * Verifies the token once and checks it against the revocations.
+     * A failing revocation check is logged as warning, the request continues unauthenticated.
+     *
+     * @param token The JWT token from the request.
+     * @return The authenticated user, or null if the token is invalid, expired or revoked.
+     */
+    private AuthenticatedUser authenticate(String token) {
+        VerifiedToken verifiedToken;
+        try {
+            verifiedToken = jwtGenerator.getVerifiedToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.debug("JWT ist abgelaufen oder ungültig: {}", e.getMessage());
+            return null;
+        }
+        try {
+            if (tokenRevocationStore.isRevoked(verifiedToken.getId())) {
+                logger.debug("JWT des Users {} wurde widerrufen", verifiedToken.getUsername());
+                return null;
+            }
+            AuthenticatedUser user = verifiedToken.getUser();
+            if (user == null) {
+                return loadUser(verifiedToken.getUsername());
+            }
+            if (tokenRevocationStore.isRevoked(user.getUserId(), verifiedToken.getIssuedAt())) {
+                logger.debug("JWTs des Users {} wurden widerrufen", user.getUsername());
+                return null;
+            }
+            return user;
+        } catch (UsernameNotFoundException e) {
+            logger.debug("User {} des JWT existiert nicht mehr", verifiedToken.getUsername());
+            return null;
+        } catch (RuntimeException e) {
+            logger.warn("JWT des Users {} konnte nicht gegen die Widerrufe geprüft werden: {}", verifiedToken.getUsername(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the user of a token that doesn't carry the ids of the user and its person.
+     *
+     * @param username The username contained in the token.
+     * @return The user with the ids and roles from the {@link CustomUserDetailsService}.
+     */
+    private AuthenticatedUser loadUser(String username) {
+        SleepUserDetails userDetails = customUserDetailsService.loadUserByUsername(username);
+        return new AuthenticatedUser(userDetails.getUsername(), userDetails.getUserId(), userDetails.getPersonId(),
+                userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    /**
+     * Extracts the JWT token from the Authorization header of the HTTP request or, for the pages, from the auth_token cookie.
      *
-     * @param request The HTTP request containing the Authorization header.
+     * @param request The HTTP request containing the Authorization header or the cookie.
      * @return The JWT token, or null if not found.
      */
-    public String getJWTFromRequest(HttpServletRequest request) {
+    public static String getJWTFromRequest(HttpServletRequest request) {
         String berarerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(berarerToken) && berarerToken.startsWith("Bearer ")) {
             return berarerToken.substring(7);
         }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (AUTH_COOKIE.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
         return null;
     }
 }
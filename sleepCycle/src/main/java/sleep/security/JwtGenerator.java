@@ -1,25 +1,77 @@
 package sleep.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class generates, validates, and parses JWT (JSON Web Token) tokens.
  * It provides methods for creating a token, extracting the username from a token, and validating the token's authenticity.
+ * The claims of verified tokens are cached by the SHA-256 digest of the token until the token expires,
+ * so a client sending the same token again skips the signature verification.
+ * Every token gets a random jti, so it can be revoked before it expires.
  */
 @Component
 public class JwtGenerator {
-    // Secret key used for signing the JWT. In this case, HMAC SHA-512 algorithm.
-    private SecretKey key = Jwts.SIG.HS512.key().build();
+
+    /** Upper bound for the number of verified tokens kept in memory. */
+    static final int MAX_VERIFIED_TOKENS = 10000;
+
+    static final String USER_ID_CLAIM = "uid";
+    static final String PERSON_ID_CLAIM = "pid";
+    static final String ROLES_CLAIM = "roles";
+
+    // Rotating HMAC SHA-512 keys shared by all nodes, the kid header names the key of a token.
+    private final JwtKeyStore keyStore;
+    // Parsers are immutable and thread-safe, so one instance is shared by all requests.
+    private final JwtParser parser;
+
+    private final Cache<String, VerifiedToken> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(MAX_VERIFIED_TOKENS)
+            .expireAfter(new Expiry<String, VerifiedToken>() {
+                @Override
+                public long expireAfterCreate(String digest, VerifiedToken token, long currentTime) {
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, token.getExpiration().getTime() - System.currentTimeMillis()));
+                }
+
+                @Override
+                public long expireAfterUpdate(String digest, VerifiedToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String digest, VerifiedToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    public JwtGenerator(final JwtKeyStore keyStore) {
+        this.keyStore = keyStore;
+        this.parser = Jwts.parser().keyLocator(keyStore).build();
+    }
 
     /**
      * Generates a JWT token for the authenticated user.
+     * If the authentication was created from a {@link SleepUserDetails}, the ids of the user and its person
+     * and the roles are signed into the token, so requests with the token don't have to look up the user.
      *
      * @param auth The authentication object containing user details (like username).
      * @return A JWT token as a String.
@@ -30,16 +82,47 @@ public class JwtGenerator {
 
         Date expiryDate = new Date(now.getTime() + SecurityConstants.JWT_EXPIRES_IN);
 
-        String token = Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(username)
                 .issuedAt(new Date())
-                .expiration(expiryDate)
-                .signWith(key)
+                .expiration(expiryDate);
+        if (auth.getPrincipal() instanceof SleepUserDetails userDetails) {
+            builder.claim(USER_ID_CLAIM, userDetails.getUserId())
+                    .claim(PERSON_ID_CLAIM, userDetails.getPersonId())
+                    .claim(ROLES_CLAIM, userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        }
+        String keyId = keyStore.getSigningKeyId();
+        String token = builder
+                .header().keyId(keyId).and()
+                .signWith(keyStore.getSigningKey(keyId))
                 .compact();
 
         return token;
     }
 
+    /**
+     * Returns the claims of the token needed to authenticate a request, all from one lookup.
+     * The signature and expiration are only verified if the token isn't cached yet.
+     * Tokens without an expiration are verified on every call.
+     *
+     * @param token The JWT token as a String.
+     * @return The verified claims of the token.
+     * @throws io.jsonwebtoken.JwtException If the token is invalid or expired.
+     */
+    public VerifiedToken getVerifiedToken(String token) {
+        String digest = digest(token);
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(digest);
+        if (verifiedToken == null) {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            verifiedToken = new VerifiedToken(claims.getId(), claims.getSubject(), claims.getIssuedAt(), claims.getExpiration(), getUser(claims));
+            if (claims.getExpiration() != null) {
+                verifiedTokens.put(digest, verifiedToken);
+            }
+        }
+        return verifiedToken;
+    }
+
     /**
      * Extracts the username (subject) from the JWT token.
      *
@@ -47,13 +130,7 @@ public class JwtGenerator {
      * @return The username contained in the token.
      */
     public String getUsernameFromJWT(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-
-        return claims.getSubject();
+        return getVerifiedToken(token).getUsername();
     }
 
     /**
@@ -65,11 +142,30 @@ public class JwtGenerator {
      */
     public boolean validateToken(String token) {
         try {
-            Jwts.parser().verifyWith(key).build().parseSignedClaims(token);
+            getVerifiedToken(token);
             return true;
         } catch (Exception e) {
             throw new AuthenticationCredentialsNotFoundException("JWT ist abgelaufen oder falsch");
         }
     }
 
+    private static AuthenticatedUser getUser(Claims claims) {
+        Integer userId = claims.get(USER_ID_CLAIM, Integer.class);
+        if (userId == null) {
+            return null;
+        }
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        return new AuthenticatedUser(claims.getSubject(), userId, claims.get(PERSON_ID_CLAIM, Integer.class),
+                roles != null ? roles.stream().map(String::valueOf).toList() : List.of());
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -0,0 +1,154 @@
+package sleep.security;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keyset for signing and verifying the JWTs.
+ *
+ * The time is divided into epochs of the configured rotation interval. The HS512 key of an epoch is derived from a
+ * master secret, which is read from a key file or the configuration, so all nodes sharing the secret sign with the same
+ * key and accept each other's tokens without any coordination. The epoch is written into the kid header of a token.
+ * Tokens are signed with the key of the current epoch and a key is accepted for the overlap window before and after
+ * its epoch, so tokens stay valid across a rotation and between nodes with slightly different clocks.
+ */
+@Component
+public class JwtKeyStore extends LocatorAdapter<Key> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtKeyStore.class);
+
+    static final int MIN_SECRET_LENGTH = 32;
+    private static final String KEY_DERIVATION_ALGORITHM = "HmacSHA512";
+    private static final String KEY_DERIVATION_PREFIX = "sleep-jwt-";
+
+    private final byte[] secret;
+    private final long rotationInterval;
+    private final long overlap;
+    private final Clock clock;
+    private final Map<Long, SecretKey> keys = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JwtKeyStore(@Value("${sleep.security.jwt.secret:}") final String secret,
+                       @Value("${sleep.security.jwt.secret-file:}") final String secretFile,
+                       @Value("${sleep.security.jwt.rotation-interval:24h}") final Duration rotationInterval,
+                       @Value("${sleep.security.jwt.overlap:1h}") final Duration overlap) throws IOException {
+        this(loadSecret(secret, secretFile), rotationInterval, overlap, Clock.systemUTC());
+    }
+
+    JwtKeyStore(byte[] secret, Duration rotationInterval, Duration overlap, Clock clock) {
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("Das JWT-Secret muss mindestens " + MIN_SECRET_LENGTH + " Bytes lang sein");
+        }
+        if (overlap.toMillis() < SecurityConstants.JWT_EXPIRES_IN) {
+            logger.warn("Das Überlappungsfenster {} ist kürzer als die Gültigkeit eines JWT, Tokens können vor ihrem Ablauf ungültig werden", overlap);
+        }
+        this.secret = secret;
+        this.rotationInterval = rotationInterval.toMillis();
+        this.overlap = overlap.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * @return The kid of the key tokens are currently signed with.
+     */
+    public String getSigningKeyId() {
+        return String.valueOf(currentEpoch());
+    }
+
+    /**
+     * Returns the key for signing a token, the kid is taken once from {@link #getSigningKeyId()},
+     * so a rotation in between can't produce a token whose kid doesn't match its signature.
+     *
+     * @param keyId The kid of the signing key.
+     * @return The key of the epoch named by the kid.
+     */
+    public SecretKey getSigningKey(String keyId) {
+        return keyOf(Long.parseLong(keyId));
+    }
+
+    /**
+     * Looks up the key for verifying a token by the kid in its header.
+     *
+     * @param header The header of the signed token.
+     * @return The key of the epoch named by the kid.
+     * @throws SignatureException If the token has no kid or its key isn't accepted anymore.
+     */
+    @Override
+    protected Key locate(JwsHeader header) {
+        long epoch;
+        try {
+            epoch = Long.parseLong(header.getKeyId());
+        } catch (NumberFormatException e) {
+            throw new SignatureException("JWT ohne gültige kid");
+        }
+        long now = clock.millis();
+        if (now < epoch * rotationInterval - overlap || now >= (epoch + 1) * rotationInterval + overlap) {
+            throw new SignatureException("Der Schlüssel " + epoch + " ist nicht mehr gültig");
+        }
+        return keyOf(epoch);
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(clock.millis(), rotationInterval);
+    }
+
+    private SecretKey keyOf(long epoch) {
+        SecretKey key = keys.get(epoch);
+        if (key == null) {
+            key = deriveKey(epoch);
+            // the derived keys are cheap to recompute, only the ones around the current epoch are kept
+            long current = currentEpoch();
+            keys.keySet().removeIf(cached -> Math.abs(cached - current) > 1);
+            keys.put(epoch, key);
+        }
+        return key;
+    }
+
+    private SecretKey deriveKey(long epoch) {
+        try {
+            Mac mac = Mac.getInstance(KEY_DERIVATION_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, KEY_DERIVATION_ALGORITHM));
+            return Keys.hmacShaKeyFor(mac.doFinal((KEY_DERIVATION_PREFIX + epoch).getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Der JWT-Schlüssel konnte nicht abgeleitet werden", e);
+        }
+    }
+
+    private static byte[] loadSecret(String secret, String secretFile) throws IOException {
+        if (StringUtils.hasText(secretFile)) {
+            logger.info("Lade das JWT-Secret aus der Datei {}", secretFile);
+            return Base64.getDecoder().decode(Files.readString(Path.of(secretFile)).trim());
+        }
+        if (StringUtils.hasText(secret)) {
+            return Base64.getDecoder().decode(secret.trim());
+        }
+        logger.warn("Es ist kein JWT-Secret konfiguriert, Tokens sind nur auf diesem Knoten und bis zum Neustart gültig");
+        byte[] random = new byte[64];
+        new SecureRandom().nextBytes(random);
+        return random;
+    }
+}
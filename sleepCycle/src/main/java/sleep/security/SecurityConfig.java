@@ -1,5 +1,7 @@
 package sleep.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -15,6 +17,8 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 import org.springframework.security.web.csrf.CsrfTokenRequestAttributeHandler;
 
+import java.time.Duration;
+
 /**
  * Security configuration class for setting up authentication and authorization rules for the application.
  * It includes settings for JWT-based authentication, password encoding, and custom user details services.
@@ -26,11 +30,13 @@ public class SecurityConfig {
     private JwtEntryPoint jwtEntryPoint;
     private CustomUserDetailsService userDetailsService;
     private JwtGenerator jwtGenerator;
+    private TokenRevocationStore tokenRevocationStore;
 
-    public SecurityConfig(final CustomUserDetailsService userDetailsService, JwtEntryPoint jwtEntryPoint, JwtGenerator jwtGenerator) {
+    public SecurityConfig(final CustomUserDetailsService userDetailsService, JwtEntryPoint jwtEntryPoint, JwtGenerator jwtGenerator, TokenRevocationStore tokenRevocationStore) {
         this.userDetailsService = userDetailsService;
         this.jwtEntryPoint = jwtEntryPoint;
         this.jwtGenerator = jwtGenerator;
+        this.tokenRevocationStore = tokenRevocationStore;
     }
 
     /**
@@ -40,12 +46,14 @@ public class SecurityConfig {
      * - Defines rules for session management (stateless).
      * - Specifies URL patterns that should be publicly accessible or require authentication.
      * - Adds JWT authentication filter before the standard UsernamePasswordAuthenticationFilter.
+     * - Adds the concurrency limit before the JWT authentication filter, so rejected requests aren't authenticated.
      *
      * @param http HttpSecurity object to configure security settings
+     * @param concurrencyLimitFilter The filter limiting the concurrent requests
      * @return SecurityFilterChain with defined settings
      */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, ConcurrencyLimitFilter concurrencyLimitFilter) throws Exception {
         http
                 .csrf(csrf -> csrf.csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse()).csrfTokenRequestHandler(new CsrfTokenRequestAttributeHandler()))
                 .exceptionHandling(customEx -> customEx.authenticationEntryPoint(jwtEntryPoint))
@@ -53,12 +61,13 @@ public class SecurityConfig {
                 .authorizeHttpRequests(authorizeRequests -> authorizeRequests
                         .requestMatchers("/css/**", "/js/**", "/images/**").permitAll() // access to static resources
                         .requestMatchers("/api/auth/**").permitAll()
-                        .requestMatchers(HttpMethod.GET,"/gatherSleepSessions", "/personalOverview","/login", "/register", "/", "/profile", "/optimization", "/api/session/getByDate").permitAll()
+                        .requestMatchers(HttpMethod.GET,"/gatherSleepSessions", "/personalOverview","/login", "/register", "/", "/profile", "/optimization", "/api/session/getByDate", "/api/session/overview", "/api/session/export").permitAll()
                         .requestMatchers(HttpMethod.PUT, "/api/session/*/update", "/api/person/*/update").permitAll()
-                        .requestMatchers(HttpMethod.POST,"/api/session/create", "/api/session/*/delete", "api/person/*/delete").permitAll()
+                        .requestMatchers(HttpMethod.POST,"/api/session/create", "/api/session/bulk", "/api/session/import", "/api/session/*/delete", "api/person/*/delete").permitAll()
                         .anyRequest().authenticated()
                 );
         http.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterBefore(concurrencyLimitFilter, JWTAuthenticationFilter.class);
         return http.build();
     }
 
@@ -76,12 +85,20 @@ public class SecurityConfig {
 
     /**
      * Provides a PasswordEncoder bean for securely hashing passwords.
+     * The hashing runs on a bounded pool, so logins and registrations can't occupy all request threads.
      *
+     * @param meterRegistry The registry for the metrics of the hashing pool
+     * @param threads The number of hashing threads, 0 for one per available processor
+     * @param queueCapacity The number of hashes that may wait for a free thread before requests are rejected
+     * @param retryAfterSeconds The Retry-After sent with rejected requests
      * @return The BCryptPasswordEncoder instance used for password hashing
      */
     @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                    @Value("${sleep.security.password-hashing.threads:0}") int threads,
+                                    @Value("${sleep.security.password-hashing.queue-capacity:32}") int queueCapacity,
+                                    @Value("${sleep.security.password-hashing.retry-after:1}") long retryAfterSeconds) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry, threads, queueCapacity, retryAfterSeconds);
     }
 
     /**
@@ -92,6 +109,42 @@ public class SecurityConfig {
      */
     @Bean
     public JWTAuthenticationFilter jwtAuthenticationFilter() throws Exception {
-        return new JWTAuthenticationFilter(jwtGenerator, userDetailsService);
+        return new JWTAuthenticationFilter(jwtGenerator, userDetailsService, tokenRevocationStore);
+    }
+
+    /**
+     * Creates the filter limiting the concurrent requests of the REST API, the pages and the authentication,
+     * each limit adapting to the latency of the requests of its group.
+     *
+     * @param meterRegistry The registry for the metrics of the limits
+     * @param minLimit The lowest limit of a group
+     * @param maxLimit The highest limit of a group
+     * @param backoffRatio The factor a limit is multiplied with after a slow or failed request
+     * @param retryAfterSeconds The Retry-After sent with rejected requests
+     * @param apiInitialLimit The initial limit of /api/session/** and /api/person/**
+     * @param apiLatencyThreshold The latency above which the limit of the REST API is lowered
+     * @param pagesInitialLimit The initial limit of the pages
+     * @param pagesLatencyThreshold The latency above which the limit of the pages is lowered
+     * @param authInitialLimit The initial limit of /api/auth/**
+     * @param authLatencyThreshold The latency above which the limit of the authentication is lowered
+     * @return The ConcurrencyLimitFilter added before the JWTAuthenticationFilter
+     */
+    @Bean
+    public ConcurrencyLimitFilter concurrencyLimitFilter(MeterRegistry meterRegistry,
+                                                         @Value("${sleep.concurrency-limit.min-limit:2}") int minLimit,
+                                                         @Value("${sleep.concurrency-limit.max-limit:200}") int maxLimit,
+                                                         @Value("${sleep.concurrency-limit.backoff-ratio:0.9}") double backoffRatio,
+                                                         @Value("${sleep.concurrency-limit.retry-after:1}") long retryAfterSeconds,
+                                                         @Value("${sleep.concurrency-limit.api.initial-limit:20}") int apiInitialLimit,
+                                                         @Value("${sleep.concurrency-limit.api.latency-threshold:500ms}") Duration apiLatencyThreshold,
+                                                         @Value("${sleep.concurrency-limit.pages.initial-limit:20}") int pagesInitialLimit,
+                                                         @Value("${sleep.concurrency-limit.pages.latency-threshold:1s}") Duration pagesLatencyThreshold,
+                                                         @Value("${sleep.concurrency-limit.auth.initial-limit:8}") int authInitialLimit,
+                                                         @Value("${sleep.concurrency-limit.auth.latency-threshold:2s}") Duration authLatencyThreshold) {
+        return new ConcurrencyLimitFilter(meterRegistry,
+                new AimdLimit(apiInitialLimit, minLimit, maxLimit, apiLatencyThreshold, backoffRatio),
+                new AimdLimit(pagesInitialLimit, minLimit, maxLimit, pagesLatencyThreshold, backoffRatio),
+                new AimdLimit(authInitialLimit, minLimit, maxLimit, authLatencyThreshold, backoffRatio),
+                retryAfterSeconds);
     }
 }
@@ -0,0 +1,36 @@
+package sleep.security;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Spring Security user that additionally carries the ids of the {@link sleep.models.User}
+ * and of its {@link sleep.models.SleepPerson}, so they don't have to be loaded again after authentication.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class SleepUserDetails extends User {
+
+    private final int userId;
+    private final Integer personId;
+
+    public SleepUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities, int userId, Integer personId) {
+        super(username, password, authorities);
+        this.userId = userId;
+        this.personId = personId;
+    }
+
+    /**
+     * Creates an independent copy. Spring Security erases the password of the returned user after a login,
+     * so the cached instance must never be handed out itself.
+     *
+     * @return A copy of this user including the password.
+     */
+    public SleepUserDetails copy() {
+        return new SleepUserDetails(getUsername(), getPassword(), getAuthorities(), userId, personId);
+    }
+}
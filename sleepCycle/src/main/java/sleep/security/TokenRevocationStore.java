@@ -0,0 +1,181 @@
+package sleep.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.models.RevokedToken;
+import sleep.models.RevokedUser;
+import sleep.repository.RevokedTokenRepository;
+import sleep.repository.RevokedUserRepository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store of the access tokens revoked before their expiry, keyed by the jti claim.
+ *
+ * The revocations are persisted in the revoked_token table. Every node keeps a Bloom filter of the revoked jtis,
+ * which is rebuilt from the table on startup and periodically, so revocations of other nodes are picked up after
+ * at most one refresh interval. Only a jti the filter might contain is looked up in the database,
+ * all other tokens are accepted without any query. Until the filter is loaded every jti is looked up.
+ *
+ * All tokens of a user issued up to a point in time are revoked at once when the user is deleted or its roles change,
+ * because the tokens carry the person id and the roles for their whole lifetime. These revocations are kept in the
+ * revoked_user table and in memory, which is reloaded with the filter. As the claim iat has a precision of seconds,
+ * tokens issued within the second of the revocation are rejected as well.
+ * The checks are published as {@code token.revocation.checks} with the result as tag.
+ */
+@Component
+public class TokenRevocationStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationStore.class);
+
+    static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final RevokedUserRepository revokedUserRepository;
+    private final long expectedRevocations;
+    private final Counter filtered;
+    private final Counter revoked;
+    private final Counter falsePositive;
+
+    // jtis revoked on this node, added to every rebuilt filter until they expire, so they can't get lost
+    // when a rebuild reads the table before the revocation is committed
+    private final Map<String, Date> revokedOnThisNode = new ConcurrentHashMap<>();
+    private final Map<Integer, RevokedUser> usersRevokedOnThisNode = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter;
+    // time of the last revocation per user id, null until loaded
+    private volatile Map<Integer, Date> revokedUsers;
+
+    public TokenRevocationStore(final RevokedTokenRepository revokedTokenRepository, final RevokedUserRepository revokedUserRepository,
+                                final MeterRegistry meterRegistry,
+                                @Value("${sleep.security.revocation.expected-revocations:100000}") final long expectedRevocations) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.revokedUserRepository = revokedUserRepository;
+        this.expectedRevocations = expectedRevocations;
+        this.filtered = Counter.builder("token.revocation.checks").tag("result", "filtered").register(meterRegistry);
+        this.revoked = Counter.builder("token.revocation.checks").tag("result", "revoked").register(meterRegistry);
+        this.falsePositive = Counter.builder("token.revocation.checks").tag("result", "false_positive").register(meterRegistry);
+    }
+
+    /**
+     * Revokes a token until it expires.
+     *
+     * @param jti The jti claim of the token, tokens without one can't be revoked.
+     * @param expiresAt The expiration of the token.
+     */
+    @Transactional
+    public void revoke(String jti, Date expiresAt) {
+        if (jti == null) {
+            logger.debug("Token ohne jti kann nicht widerrufen werden");
+            return;
+        }
+        revokedTokenRepository.save(new RevokedToken(jti, expiresAt));
+        revokedOnThisNode.put(jti, expiresAt);
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(jti);
+        }
+        logger.debug("Token {} bis {} widerrufen", jti, expiresAt);
+    }
+
+    /**
+     * Revokes all access tokens of a user issued until now, e.g. because the user was deleted or its roles changed.
+     * The revocation is kept until the last of these tokens would have expired.
+     *
+     * @param userId The ID of the user.
+     */
+    @Transactional
+    public void revokeUser(int userId) {
+        Date now = new Date();
+        RevokedUser revokedUser = new RevokedUser(userId, now, new Date(now.getTime() + SecurityConstants.JWT_EXPIRES_IN));
+        revokedUserRepository.save(revokedUser);
+        usersRevokedOnThisNode.put(userId, revokedUser);
+        Map<Integer, Date> current = revokedUsers;
+        if (current != null) {
+            current.merge(userId, now, TokenRevocationStore::latest);
+        }
+        logger.debug("Tokens des Users mit der Id: {} bis {} widerrufen", userId, now);
+    }
+
+    /**
+     * Checks whether the tokens of a user issued at the given time were revoked. The revocations are read from memory,
+     * only until they are loaded the database is queried.
+     *
+     * @param userId The ID of the user of the token.
+     * @param issuedAt The iat claim of the token, tokens without one are revoked with every revocation of their user.
+     * @return true if the user was revoked at or after the token was issued.
+     */
+    public boolean isRevoked(int userId, Date issuedAt) {
+        Map<Integer, Date> current = revokedUsers;
+        Date revokedAt = current != null
+                ? current.get(userId)
+                : revokedUserRepository.findById(userId).map(RevokedUser::getRevokedAt).orElse(null);
+        boolean userRevoked = revokedAt != null && (issuedAt == null || !issuedAt.after(revokedAt));
+        if (userRevoked) {
+            revoked.increment();
+        }
+        return userRevoked;
+    }
+
+    /**
+     * Checks whether a token was revoked. The database is only queried if the Bloom filter might contain the jti.
+     *
+     * @param jti The jti claim of the token.
+     * @return true if the token was revoked, false otherwise or if the token has no jti.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(jti)) {
+            filtered.increment();
+            return false;
+        }
+        boolean exists = revokedTokenRepository.existsById(jti);
+        (exists ? revoked : falsePositive).increment();
+        return exists;
+    }
+
+    /**
+     * Removes the expired revocations and rebuilds the Bloom filter and the revoked users from the tables,
+     * on startup and then after every refresh interval.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${sleep.security.revocation.refresh-interval:PT1M}",
+            initialDelayString = "${sleep.security.revocation.refresh-interval:PT1M}")
+    @Transactional
+    public void refresh() {
+        Date now = new Date();
+        int deleted = revokedTokenRepository.deleteExpired(now);
+        revokedOnThisNode.values().removeIf(expiresAt -> !expiresAt.after(now));
+
+        List<String> jtis = revokedTokenRepository.findActiveJtis(now);
+        BloomFilter next = new BloomFilter(Math.max(expectedRevocations, 2L * jtis.size()), FALSE_POSITIVE_PROBABILITY);
+        jtis.forEach(next::put);
+        revokedOnThisNode.keySet().forEach(next::put);
+        filter = next;
+        logger.debug("Filter der widerrufenen Tokens mit {} Einträgen neu aufgebaut, {} abgelaufene gelöscht", jtis.size(), deleted);
+
+        revokedUserRepository.deleteExpired(now);
+        usersRevokedOnThisNode.values().removeIf(revokedUser -> !revokedUser.getExpiresAt().after(now));
+        Map<Integer, Date> nextUsers = new ConcurrentHashMap<>();
+        revokedUserRepository.findActive(now).forEach(revokedUser -> nextUsers.merge(revokedUser.getUserId(), revokedUser.getRevokedAt(), TokenRevocationStore::latest));
+        usersRevokedOnThisNode.values().forEach(revokedUser -> nextUsers.merge(revokedUser.getUserId(), revokedUser.getRevokedAt(), TokenRevocationStore::latest));
+        revokedUsers = nextUsers;
+    }
+
+    private static Date latest(Date a, Date b) {
+        return a.after(b) ? a : b;
+    }
+}
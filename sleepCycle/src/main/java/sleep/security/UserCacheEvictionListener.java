@@ -0,0 +1,25 @@
+package sleep.security;
+
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import sleep.models.User;
+
+/**
+ * JPA entity listener that evicts a {@link User} from the {@link UserDetailsCache} whenever it is updated
+ * or removed, e.g. after a password change. Changing only the roles of a user doesn't update the entity itself,
+ * so code doing that has to call {@link UserDetailsCache#evict(String)} explicitly.
+ */
+public class UserCacheEvictionListener {
+
+    private final UserDetailsCache userDetailsCache;
+
+    public UserCacheEvictionListener(final UserDetailsCache userDetailsCache) {
+        this.userDetailsCache = userDetailsCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    void evict(User user) {
+        userDetailsCache.evict(user.getUsername());
+    }
+}
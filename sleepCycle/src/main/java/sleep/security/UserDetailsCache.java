@@ -0,0 +1,79 @@
+package sleep.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of the users loaded for authentication, keyed by username.
+ * Entries expire after a fixed time and have to be evicted explicitly when the password or the roles of a user
+ * change or the user is deleted. Hits and misses are published as {@code cache.gets} with {@code cache=userDetails}.
+ */
+@Component
+public class UserDetailsCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDetailsCache.class);
+
+    static final String CACHE_NAME = "userDetails";
+
+    private final Cache<String, SleepUserDetails> cache;
+
+    public UserDetailsCache(final MeterRegistry meterRegistry,
+                            @Value("${sleep.security.user-cache.maximum-size:10000}") final long maximumSize,
+                            @Value("${sleep.security.user-cache.expire-after-write:5m}") final Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached user or loads it with the given loader. Users that can't be loaded are not cached.
+     *
+     * @param username The username of the user.
+     * @param loader Loads the user on a cache miss.
+     * @return A copy of the cached user.
+     */
+    public SleepUserDetails get(String username, Function<String, SleepUserDetails> loader) {
+        return cache.get(username, loader).copy();
+    }
+
+    /**
+     * Removes the user from the cache. Inside a transaction the user is removed again after it completed,
+     * so a concurrent request can't put the old state back before the change is committed.
+     *
+     * @param username The username of the changed or deleted user.
+     */
+    public void evict(String username) {
+        logger.debug("Entferne den User {} aus dem Cache", username);
+        cache.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(username);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes all users from the cache, e.g. after the roles of many users changed.
+     */
+    public void evictAll() {
+        logger.debug("Entferne alle User aus dem Cache");
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,23 @@
+package sleep.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * The claims of a JWT token whose signature and expiration were verified by the {@link JwtGenerator}.
+ */
+@Data
+@AllArgsConstructor
+public class VerifiedToken {
+
+    /** The jti claim, null for tokens issued before they got one. */
+    private String id;
+    private String username;
+    /** The iat claim, with a precision of seconds. */
+    private Date issuedAt;
+    private Date expiration;
+    /** The user taken from the claims, null if the token doesn't carry the user id. */
+    private AuthenticatedUser user;
+}
@@ -2,6 +2,9 @@ package sleep.service;
 
 import sleep.dto.RegisterDto;
 
+import java.util.List;
+
 public interface AuthService {
     void register(RegisterDto registerDto);
+    void changeRoles(int userId, List<String> roleNames);
 }
@@ -0,0 +1,13 @@
+package sleep.service;
+
+import sleep.dto.RotatedRefreshToken;
+
+import java.time.Duration;
+
+public interface RefreshTokenService {
+    String createRefreshToken(int userId);
+    RotatedRefreshToken rotate(String refreshToken);
+    void revoke(String refreshToken);
+    void revokeAllOfUser(int userId);
+    Duration getLifetime();
+}
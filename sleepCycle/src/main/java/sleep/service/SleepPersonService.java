@@ -18,4 +18,6 @@ public interface SleepPersonService {
 
     SleepSessionResponse getAllSessionsByDateAndPersonId(Date startDate, Date endDate, int personId, int pageNo, int pageSize);
 
+    SleepSessionResponse getSessionsByDateAndPersonIdAfter(Date startDate, Date endDate, int personId, String cursor, int pageSize);
+
 }
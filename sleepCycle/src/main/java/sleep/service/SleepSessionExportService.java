@@ -0,0 +1,10 @@
+package sleep.service;
+
+import sleep.dto.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface SleepSessionExportService {
+    void exportSessions(int personId, ExportFormat format, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,10 @@
+package sleep.service;
+
+import sleep.dto.SessionImportResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface SleepSessionImportService {
+    SessionImportResponse importSessions(int personId, InputStream csv) throws IOException;
+}
@@ -1,13 +1,58 @@
 package sleep.service;
 
+import sleep.dto.BulkSessionResponse;
 import sleep.dto.SleepSessionDto;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
 public interface SleepSessionService {
     SleepSessionDto getSleepSession(Integer id);
 
     SleepSessionDto createSleepSession(SleepSessionDto session);
 
+    BulkSessionResponse createSleepSessions(List<SleepSessionDto> sessions, int personId);
+
     SleepSessionDto updateSleepSession(SleepSessionDto session, Integer id);
 
     void deleteSleepSession(Integer sessionId);
+
+    /**
+     * Sets default attributes for a SleepSession DTO, including date and duration.
+     *
+     * If the date is null, it sets the date to the start time's timezone-adjusted value.
+     * Calculates the session duration based on the start and end times, if both are provided.
+     *
+     * @param dto The SleepSession DTO to be updated with default values.
+     * @return The updated SleepSession DTO.
+     */
+    static SleepSessionDto setAttributesForSessionDto(SleepSessionDto dto){
+        // if date null, set automatic date attr
+        if (dto.getDate() == null) {
+            dto.setDate(convertToDateWithTimeZone(dto.getStartTime()));
+        }
+        // calculate duration
+        if (dto.getStartTime() != null && dto.getEndTime() != null) {
+            dto.setDuration((int) Math.abs(dto.getEndTime().getTime() - dto.getStartTime().getTime()));
+        }
+
+        return dto;
+    }
+
+    /**
+     * Converts a point in time to the start of its day in the default time zone.
+     *
+     * @param date The point in time, null for now.
+     * @return The start of the day.
+     */
+    static Date convertToDateWithTimeZone(Date date) {
+        if (date == null)
+            return new Date();
+        LocalDate localDate = date.toInstant()
+                .atZone(ZoneId.systemDefault())
+                .toLocalDate();
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
 }
@@ -0,0 +1,26 @@
+package sleep.service;
+
+import sleep.dto.DurationStatsDto;
+import sleep.dto.OverviewStatsDto;
+import sleep.models.SleepSession;
+
+import java.util.Collection;
+import java.util.Date;
+
+public interface SleepStatsService {
+    void addSession(SleepSession session);
+
+    void addSessions(Collection<SleepSession> sessions);
+
+    void removeSession(SleepSession session);
+
+    void deleteStatsOfPerson(int personId);
+
+    OverviewStatsDto getOverviewStats(int personId);
+
+    DurationStatsDto getDurationStatsSince(int personId, Date since);
+
+    DurationStatsDto getDurationStats(int personId);
+
+    void rebuild();
+}
@@ -2,23 +2,31 @@ package sleep.service.impl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import sleep.dto.RegisterDto;
 import sleep.dto.SleepPersonDto;
 import sleep.models.Role;
 import sleep.models.User;
 import sleep.repository.RoleRepository;
 import sleep.repository.UserRepository;
+import sleep.security.TokenRevocationStore;
+import sleep.security.UserDetailsCache;
 import sleep.service.AuthService;
+import sleep.service.RefreshTokenService;
 import sleep.service.SleepPersonService;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Implementation of the AuthService interface for user authentication and registration functionality.
  *
- * Provides methods to register new users with associated roles and linked SleepPerson entities.
+ * Provides methods to register new users with associated roles and linked SleepPerson entities
+ * and to change the roles of a user.
  */
 @Service
 public class AuthServiceImpl implements AuthService {
@@ -29,12 +37,19 @@ public class AuthServiceImpl implements AuthService {
     private RoleRepository roleRepository;
     private PasswordEncoder passwordEncoder;
     private SleepPersonService sleepPersonService;
+    private UserDetailsCache userDetailsCache;
+    private TokenRevocationStore tokenRevocationStore;
+    private RefreshTokenService refreshTokenService;
 
-    public AuthServiceImpl(final UserRepository userRepository, final RoleRepository roleRepository, PasswordEncoder passwordEncoder, SleepPersonService sleepPersonService) {
+    public AuthServiceImpl(final UserRepository userRepository, final RoleRepository roleRepository, PasswordEncoder passwordEncoder, SleepPersonService sleepPersonService,
+                           final UserDetailsCache userDetailsCache, final TokenRevocationStore tokenRevocationStore, final RefreshTokenService refreshTokenService) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
         this.sleepPersonService = sleepPersonService;
+        this.userDetailsCache = userDetailsCache;
+        this.tokenRevocationStore = tokenRevocationStore;
+        this.refreshTokenService = refreshTokenService;
     }
 
     /**
@@ -60,4 +75,31 @@ public class AuthServiceImpl implements AuthService {
         sleepPersonDto.setUserId(user.getId());
         sleepPersonService.createSleepPerson(sleepPersonDto);
     }
+
+    /**
+     * Replaces the roles of a user.
+     *
+     * Changing the roles doesn't update the user entity itself, so the cached user details are evicted here.
+     * The access tokens of the user carry the old roles, they are revoked together with its refresh tokens,
+     * so the user has to log in again to get the new roles.
+     *
+     * @param userId The ID of the user.
+     * @param roleNames The names of the new roles.
+     * @throws UsernameNotFoundException If the user doesn't exist.
+     * @throws IllegalArgumentException If one of the roles doesn't exist.
+     */
+    @Override
+    @Transactional
+    public void changeRoles(int userId, List<String> roleNames) {
+        User user = userRepository.findById(userId).orElseThrow(() -> new UsernameNotFoundException("User konnte nicht gefunden werden!"));
+        logger.info("Die Rollen des Users: {} werden auf {} geändert", user.getUsername(), roleNames);
+        List<Role> roles = new ArrayList<>();
+        for (String roleName : roleNames) {
+            roles.add(roleRepository.findByName(roleName).orElseThrow(() -> new IllegalArgumentException("Rolle " + roleName + " existiert nicht")));
+        }
+        user.setRoles(roles);
+        userDetailsCache.evict(user.getUsername());
+        refreshTokenService.revokeAllOfUser(userId);
+        tokenRevocationStore.revokeUser(userId);
+    }
 }
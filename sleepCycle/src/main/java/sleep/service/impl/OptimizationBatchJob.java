@@ -0,0 +1,179 @@
+package sleep.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sleep.models.SleepPerson;
+import sleep.repository.OptimizationResultRepository;
+import sleep.repository.SleepPersonRepository;
+import sleep.repository.SleepPersonRepository.IdRange;
+import sleep.repository.SleepPersonRepository.PersonName;
+import sleep.service.impl.OptimizationServiceImpl.OptimizationResponse;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nightly batch that precomputes the optimization results of all persons into the optimization_result table.
+ *
+ * The id range of the persons is split on a fork-join pool until a partition holds at most the configured number
+ * of ids, every partition is computed by one worker with one transaction per person. Only one node runs the batch at
+ * a time, the others skip it when they can't get the PostgreSQL advisory lock.
+ * The progress of the current run is published as {@code optimization.batch.progress}, the computed persons as
+ * {@code optimization.batch.persons} with the result as tag, the runs as {@code optimization.batch.run} and the
+ * persons per second of the last run as {@code optimization.batch.throughput}.
+ */
+@Component
+public class OptimizationBatchJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimizationBatchJob.class);
+
+    // key of the advisory lock, "SLEEPOPT" as ASCII
+    static final long LOCK_KEY = 0x534C4545504F5054L;
+
+    private final DataSource dataSource;
+    private final SleepPersonRepository personRepository;
+    private final OptimizationResultRepository resultRepository;
+    private final OptimizationServiceImpl optimizationService;
+    private final TransactionTemplate transactionTemplate;
+    private final int parallelism;
+    private final int partitionSize;
+    private final Counter computed;
+    private final Counter failed;
+    private final Timer runTimer;
+    private final AtomicLong processed = new AtomicLong();
+    private volatile long total;
+    private volatile double throughput;
+
+    public OptimizationBatchJob(final DataSource dataSource, final SleepPersonRepository personRepository,
+                                final OptimizationResultRepository resultRepository, final OptimizationServiceImpl optimizationService,
+                                final PlatformTransactionManager transactionManager, final MeterRegistry meterRegistry,
+                                @Value("${sleep.optimization.batch.parallelism:4}") final int parallelism,
+                                @Value("${sleep.optimization.batch.partition-size:500}") final int partitionSize) {
+        this.dataSource = dataSource;
+        this.personRepository = personRepository;
+        this.resultRepository = resultRepository;
+        this.optimizationService = optimizationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.parallelism = parallelism;
+        this.partitionSize = partitionSize;
+        this.computed = Counter.builder("optimization.batch.persons").tag("result", "computed").register(meterRegistry);
+        this.failed = Counter.builder("optimization.batch.persons").tag("result", "failed").register(meterRegistry);
+        this.runTimer = Timer.builder("optimization.batch.run").register(meterRegistry);
+        Gauge.builder("optimization.batch.progress", this, job -> job.total == 0 ? 1.0 : (double) job.processed.get() / job.total)
+                .register(meterRegistry);
+        Gauge.builder("optimization.batch.throughput", this, job -> job.throughput).baseUnit("persons/s").register(meterRegistry);
+    }
+
+    /**
+     * Runs the batch if no other node is running it.
+     */
+    @Scheduled(cron = "${sleep.optimization.batch.cron:0 0 3 * * *}")
+    public void run() {
+        // the session level lock is held by this connection until it is released or the connection is closed
+        try (Connection connection = dataSource.getConnection()) {
+            if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+                logger.info("Optimierungs-Batch läuft bereits auf einem anderen Knoten");
+                return;
+            }
+            try {
+                runTimer.record(this::computeAll);
+            } finally {
+                advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+            }
+        } catch (SQLException e) {
+            logger.error("Sperre für den Optimierungs-Batch konnte nicht gesetzt werden", e);
+        }
+    }
+
+    private void computeAll() {
+        IdRange range = personRepository.idRange();
+        processed.set(0);
+        total = range == null || range.getPersonCount() == null ? 0 : range.getPersonCount();
+        if (total == 0) {
+            logger.info("Keine Personen für den Optimierungs-Batch");
+            return;
+        }
+        logger.info("Starte den Optimierungs-Batch für {} Personen mit {} Threads", total, parallelism);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Partition(range.getMinId(), range.getMaxId()));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        throughput = processed.get() / seconds;
+        logger.info("Optimierungs-Batch beendet, {} Personen in {} s berechnet ({} pro Sekunde)",
+                processed.get(), String.format("%.1f", seconds), String.format("%.1f", throughput));
+    }
+
+    private void computePartition(int fromId, int toId) {
+        for (PersonName name : personRepository.findNamesByIdBetween(fromId, toId)) {
+            SleepPerson person = new SleepPerson();
+            person.setId(name.getId());
+            person.setName(name.getName());
+            try {
+                transactionTemplate.executeWithoutResult(status -> compute(person));
+                computed.increment();
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.warn("Optimierung der Person mit der Id: {} konnte nicht berechnet werden", person.getId(), e);
+            }
+            processed.incrementAndGet();
+        }
+    }
+
+    private void compute(SleepPerson person) {
+        // locks the result first, a session written meanwhile waits and marks the stored result as stale afterwards
+        resultRepository.lockForRecompute(person.getId());
+        Date computedAt = new Date();
+        OptimizationResponse response = optimizationService.calculateOptimalDurationForOneCycle(person);
+        resultRepository.store(person.getId(), response.getDuration(), response.getDurationLowerBound(), response.getDurationUpperBound(),
+                response.getMessage(), response.getDurationMessage(), computedAt);
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, LOCK_KEY);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private class Partition extends RecursiveAction {
+        private final int fromId;
+        private final int toId;
+
+        Partition(int fromId, int toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) toId - fromId < partitionSize) {
+                computePartition(fromId, toId);
+                return;
+            }
+            int middle = (int) (((long) fromId + toId) / 2);
+            invokeAll(new Partition(fromId, middle), new Partition(middle + 1, toId));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package sleep.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import sleep.repository.OptimizationResultRepository;
+import sleep.service.impl.OptimizationServiceImpl.OptimizationResponse;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of the optimization results, keyed by the id of the person.
+ * A result has to be evicted whenever a session of its person is created, updated or deleted. Entries also expire
+ * after a fixed time, because the considered sessions depend on the current date.
+ * Evicting a result also marks the result precomputed by the nightly batch as stale.
+ * Concurrent misses for the same person wait for one computation.
+ * Hits and misses are published as {@code cache.gets} with {@code cache=optimization}.
+ */
+@Component
+public class OptimizationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimizationCache.class);
+
+    static final String CACHE_NAME = "optimization";
+
+    private final Cache<Integer, OptimizationResponse> cache;
+    private final OptimizationResultRepository resultRepository;
+
+    public OptimizationCache(final MeterRegistry meterRegistry, final OptimizationResultRepository resultRepository,
+                             @Value("${sleep.optimization.cache.maximum-size:10000}") final long maximumSize,
+                             @Value("${sleep.optimization.cache.expire-after-write:1h}") final Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.resultRepository = resultRepository;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached result or computes it with the given loader.
+     *
+     * @param personId The ID of the person.
+     * @param loader Computes the result on a cache miss.
+     * @return A copy of the cached result.
+     */
+    public OptimizationResponse get(int personId, Function<Integer, OptimizationResponse> loader) {
+        OptimizationResponse response = cache.get(personId, loader);
+        return new OptimizationResponse(response.getDuration(), response.getMessage(), response.getDurationMessage(),
+                response.getDurationLowerBound(), response.getDurationUpperBound());
+    }
+
+    /**
+     * Removes the result of the person from the cache and marks its precomputed result as stale within the current
+     * transaction. Inside a transaction the result is removed again after it completed, so a concurrent request
+     * can't put a result computed from the old sessions back before the change is committed.
+     *
+     * @param personId The ID of the person whose sessions changed.
+     */
+    public void evict(int personId) {
+        logger.debug("Entferne die Optimierung der Person mit der Id: {} aus dem Cache", personId);
+        cache.invalidate(personId);
+        resultRepository.markStale(personId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(personId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes all results from the cache.
+     */
+    public void evictAll() {
+        logger.debug("Entferne alle Optimierungen aus dem Cache");
+        cache.invalidateAll();
+    }
+}
@@ -6,21 +6,34 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sleep.models.OptimizationResult;
 import sleep.models.SleepPerson;
 import sleep.models.SleepSession;
+import sleep.repository.OptimizationResultRepository;
 import sleep.repository.SleepPersonRepository;
-import sleep.repository.SleepSessionRepository;
+import sleep.dto.DurationStatsDto;
 import sleep.service.OptimizationService;
+import sleep.service.SleepStatsService;
 
-import java.util.List;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.Date;
 
 /**
  * Implementation of the OptimizationService interface.
  *
  * Provides methods to calculate optimized sleep durations based on user sleep sessions.
  * This service analyzes user data to determine average sleep cycles and duration
- * recommendations based on historical sleep data.
+ * recommendations based on historical sleep data. Only the sessions of the configured recent window
+ * are considered, all sessions only if there are too few recent ones.
+ *
+ * Count, mean and variance of the durations are derived from the sums the stats rollup maintains on every
+ * session write, so a request reads a few bucket rows instead of the sessions themselves.
  */
 @Service
 public class OptimizationServiceImpl implements OptimizationService {
@@ -36,23 +49,44 @@ public class OptimizationServiceImpl implements OptimizationService {
         private Long duration;
         private String message;
         private String durationMessage;
+        private Long durationLowerBound;
+        private Long durationUpperBound;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(OptimizationServiceImpl.class);
 
     private SleepPersonRepository personRepository;
-    private SleepSessionRepository sessionRepository;
+    private SleepStatsService statsService;
+    private OptimizationCache optimizationCache;
+    private OptimizationResultRepository resultRepository;
+    private TransactionTemplate readOnlyTransaction;
+    private Period window;
 
     private static final long MILLISECONDS_DIVISOR = 1000 * 60;
+    private static final int MIN_SESSIONS = 5;
+    // two-sided 95% quantiles of the t-distribution by degrees of freedom, the normal quantile above
+    private static final double[] T_QUANTILES = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    private static final double Z_QUANTILE = 1.96;
 
 
-    public OptimizationServiceImpl(final SleepPersonRepository personRepository, final SleepSessionRepository sessionRepository) {
+    public OptimizationServiceImpl(final SleepPersonRepository personRepository, final SleepStatsService statsService, final OptimizationCache optimizationCache,
+                                   final OptimizationResultRepository resultRepository, final PlatformTransactionManager transactionManager,
+                                   @Value("${sleep.optimization.window:P2M}") final Period window) {
         this.personRepository = personRepository;
-        this.sessionRepository = sessionRepository;
+        this.statsService = statsService;
+        this.optimizationCache = optimizationCache;
+        this.resultRepository = resultRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.window = window;
     }
 
     /**
-     * Calculates the optimal sleep duration for one cycle based on a user's sleep sessions.
+     * Returns the optimal sleep duration for one cycle based on a user's sleep sessions.
+     * The result precomputed by the nightly batch is used if it was computed today and none of the sessions
+     * changed since, otherwise it is calculated. The result is cached per person until one of its sessions changes.
      *
      * @param person The SleepPerson entity for whom the optimization is calculated.
      * @return OptimizationResponse containing optimal duration, feedback message,
@@ -60,47 +94,47 @@ public class OptimizationServiceImpl implements OptimizationService {
      */
     @Override
     public OptimizationResponse getOptimalDurationForOneCycle(SleepPerson person) {
+        // only a cache miss needs a transaction, it reads the stored result and the stats with one connection
+        return optimizationCache.get(person.getId(), personId -> readOnlyTransaction.execute(status -> {
+            // the window starts at midnight, so a result computed today covers the same sessions
+            Date today = Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+            return resultRepository.findFresh(personId, today)
+                    .map(OptimizationServiceImpl::mapToResponse)
+                    .orElseGet(() -> calculateOptimalDurationForOneCycle(person));
+        }));
+    }
+
+    /**
+     * Calculates the optimal sleep duration for one cycle from the sessions of the person.
+     *
+     * @param person The SleepPerson entity for whom the optimization is calculated.
+     * @return OptimizationResponse containing optimal duration, feedback message,
+     *         and details about the average sleep duration.
+     */
+    OptimizationResponse calculateOptimalDurationForOneCycle(SleepPerson person) {
         logger.info("Generiere die Daten für die Optimierung des Schlafes für die Person: " + person.getName());
         OptimizationResponse response = new OptimizationResponse();
-        List<SleepSession> sessions = sessionRepository.sessionsOfLastTwoMonths((long) person.getId());
-
-        if (sessions == null || sessions.size() < 5) {
+        // the window starts at midnight, like the daily buckets of the rollup the sessions are summed up from
+        Date since = Date.from(LocalDate.now().minus(window).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        DurationStatsDto stats = statsService.getDurationStatsSince(person.getId(), since);
+        if (stats.getSessionCount() < MIN_SESSIONS) {
             logger.info("Aufgrund der geringen Anzahl, werden alle Sessions berücksichtigt und nicht nur die aktuellen");
-            sessions = sessionRepository.getAllSessions((long) person.getId());
+            stats = statsService.getDurationStats(person.getId());
         }
 
-        if (sessions == null || sessions.size() < 5) {
+        if (stats.getSessionCount() < MIN_SESSIONS || stats.getSumCycles() <= 0) {
             response.setDuration((long) -1);
             response.setMessage("Für die Berechnung wurden zu wenige Sessions erfasst!");
             response.setDurationMessage("Keine Bewertung der durchschnittlichen Schlafdauer möglich aufgrund zu weniger Sessions.");
             return response;
         }
 
-        int badSessions = 0;
-        long totalDuration = 0;
-        int cyclesCount = 0;
-        for (SleepSession session : sessions) {
-             if (session.getPersonalEvaluation() < 6){
-                 badSessions++;
-             }
-
-             if (session.getCycles() != null) {
-                 cyclesCount += session.getCycles();
-             } else {
-                 logger.debug("Ordne der Dauer:  {} eine Zyklusanzahl zu", session.getDuration());
-                 if (session.getDuration() / MILLISECONDS_DIVISOR < 395){
-                     cyclesCount += 4;
-                 } else if (session.getDuration() / MILLISECONDS_DIVISOR < 485) {
-                     cyclesCount += 5;
-                 } else {
-                     cyclesCount += 6;
-                 }
-             }
-
-             totalDuration += session.getDuration();
-        }
+        long sessionCount = stats.getSessionCount();
+        long totalDuration = stats.getSumDuration();
+        long badSessions = stats.getBadSessions();
+        long cyclesCount = stats.getSumCycles();
 
-        long avgDuration = totalDuration / sessions.size();
+        long avgDuration = totalDuration / sessionCount;
 
         logger.info("Generiere die Nachricht für die Bewertung der durchschnittlichen Dauer für {}",avgDuration);
         if (avgDuration > 21600000 && avgDuration < 33000000) {
@@ -112,10 +146,20 @@ public class OptimizationServiceImpl implements OptimizationService {
             response.setDurationMessage("Deine durchschnittliche Schlafdauer (" + avgDuration / MILLISECONDS_DIVISOR + " min) liegt über dem Normalbereich. Du solltest versuchen weniger zu schlafen!");
         }
 
-        response.setDuration((long) Math.round(totalDuration / cyclesCount));
+        long cycleDuration = totalDuration / cyclesCount;
+        response.setDuration(cycleDuration);
+
+        // the cycle length is the ratio of the mean duration and the mean number of cycles, its standard error is
+        // estimated by the delta method from the deviations of the durations from cycles times cycle length
+        double ratio = (double) totalDuration / cyclesCount;
+        double standardError = Math.sqrt(ratioResidualVariance(stats, ratio) / sessionCount) * sessionCount / cyclesCount;
+        long margin = Math.round(tQuantile(sessionCount - 1) * standardError);
+        response.setDurationLowerBound(Math.max(0, cycleDuration - margin));
+        response.setDurationUpperBound(cycleDuration + margin);
+        logger.info("Konfidenzintervall der Zykluslänge: {} bis {}", response.getDurationLowerBound(), response.getDurationUpperBound());
 
-        logger.info("Generiere die Nachricht über die verwendeten Sessions aufgrund von der Anzahl an {} schlechten Sessions von insgesamt {} verwendeten", badSessions, sessions.size());
-        if (badSessions > (sessions.size() / 2)) {
+        logger.info("Generiere die Nachricht über die verwendeten Sessions aufgrund von der Anzahl an {} schlechten Sessions von insgesamt {} verwendeten", badSessions, sessionCount);
+        if (badSessions > (sessionCount / 2)) {
             response.setMessage("Die Berechnung basiert zum größeren Teil auf eher schlechten Sessions (Bewertung schlechter als 6)");
         } else {
             response.setMessage("Die Berechnung basiert zum größeren Teil auf eher besseren Sessions (Bewertung gleich oder besser als 6)");
@@ -123,4 +167,57 @@ public class OptimizationServiceImpl implements OptimizationService {
 
         return response;
     }
+
+    static OptimizationResponse mapToResponse(OptimizationResult result) {
+        return new OptimizationResponse(result.getDuration(), result.getMessage(), result.getDurationMessage(),
+                result.getDurationLowerBound(), result.getDurationUpperBound());
+    }
+
+    /**
+     * Returns the sample variance of the deviations of the session durations from their cycles times the cycle length,
+     * computed from the sums of the buckets. Divided by the number of sessions and the squared mean number of cycles,
+     * it is the delta method estimate of the variance of the cycle length, so sessions whose duration varies
+     * with their number of cycles widen the interval less than durations varying for the same number of cycles.
+     *
+     * @param stats The sums of at least two sessions.
+     * @param ratio The cycle length, the sum of the durations divided by the sum of the cycles.
+     * @return The variance in square milliseconds.
+     */
+    static double ratioResidualVariance(DurationStatsDto stats, double ratio) {
+        long n = stats.getSessionCount();
+        double sumSquaredResiduals = stats.getSumDurationSq() - 2 * ratio * stats.getSumDurationCycles()
+                + ratio * ratio * stats.getSumCyclesSq();
+        // rounding can make the sum slightly negative for (nearly) proportional durations
+        return Math.max(0, sumSquaredResiduals / (n - 1));
+    }
+
+    /**
+     * Returns the two-sided 95% quantile of the t-distribution.
+     *
+     * @param degreesOfFreedom The degrees of freedom, at least 1.
+     * @return The quantile, the one of the normal distribution for more than 30 degrees of freedom.
+     */
+    static double tQuantile(long degreesOfFreedom) {
+        return degreesOfFreedom <= T_QUANTILES.length ? T_QUANTILES[(int) degreesOfFreedom - 1] : Z_QUANTILE;
+    }
+
+    /**
+     * Returns the number of cycles of a session. If the user did not enter the cycles,
+     * they are estimated from the duration of the session.
+     *
+     * @param session The session to get the cycles for.
+     * @return The entered or estimated number of cycles.
+     */
+    static int estimateCycles(SleepSession session) {
+        if (session.getCycles() != null) {
+            return session.getCycles();
+        }
+        long duration = session.getDuration() == null ? 0 : session.getDuration();
+        if (duration / MILLISECONDS_DIVISOR < 395){
+            return 4;
+        } else if (duration / MILLISECONDS_DIVISOR < 485) {
+            return 5;
+        }
+        return 6;
+    }
 }
@@ -0,0 +1,156 @@
+package sleep.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.dto.RotatedRefreshToken;
+import sleep.exceptions.InvalidRefreshTokenException;
+import sleep.models.RefreshToken;
+import sleep.models.User;
+import sleep.repository.RefreshTokenRepository;
+import sleep.repository.UserRepository;
+import sleep.service.RefreshTokenService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Implementation of RefreshTokenService for issuing, rotating and revoking refresh tokens.
+ *
+ * A refresh token is a random value, only its SHA-256 hash is stored. Every use rotates the token, the new one
+ * is valid for the full lifetime again, so an active user never has to enter the password again.
+ * Presenting a token that was already rotated revokes all tokens of its login, unless it happens within a few seconds
+ * after the rotation, e.g. by two browser tabs renewing at the same time.
+ */
+@Service
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenServiceImpl.class);
+
+    /** Time a rotated token may still be used by concurrent requests of the same client. */
+    static final Duration REUSE_GRACE_PERIOD = Duration.ofSeconds(30);
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private RefreshTokenRepository refreshTokenRepository;
+    private UserRepository userRepository;
+    private Duration lifetime;
+
+    public RefreshTokenServiceImpl(final RefreshTokenRepository refreshTokenRepository, final UserRepository userRepository,
+                                   @Value("${sleep.security.refresh-token.lifetime:14d}") final Duration lifetime) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * Creates the first refresh token of a login and removes the expired tokens of the user.
+     *
+     * @param userId The ID of the logged in user.
+     * @return The refresh token to hand to the client.
+     */
+    @Override
+    @Transactional
+    public String createRefreshToken(int userId) {
+        int deleted = refreshTokenRepository.deleteExpiredOfUser(userId, new Date());
+        logger.debug("{} abgelaufene Refresh Tokens des Users mit der Id: {} gelöscht", deleted, userId);
+        return issue(userRepository.getReferenceById(userId), UUID.randomUUID());
+    }
+
+    /**
+     * Replaces a valid refresh token by a new one of the same family.
+     *
+     * @param refreshToken The refresh token presented by the client.
+     * @return The user of the token and the new refresh token.
+     * @throws InvalidRefreshTokenException If the token is unknown, expired, revoked or was reused.
+     */
+    @Override
+    @Transactional(noRollbackFor = InvalidRefreshTokenException.class)
+    public RotatedRefreshToken rotate(String refreshToken) {
+        RefreshToken token = refreshTokenRepository.findByTokenHash(hash(refreshToken))
+                .orElseThrow(() -> new InvalidRefreshTokenException("Refresh Token ist unbekannt"));
+        Date now = new Date();
+        if (!token.getExpiresAt().after(now)) {
+            throw new InvalidRefreshTokenException("Refresh Token ist abgelaufen");
+        }
+        if (token.isRevoked()) {
+            boolean concurrentRotation = token.getRotatedAt() != null
+                    && now.getTime() - token.getRotatedAt().getTime() < REUSE_GRACE_PERIOD.toMillis()
+                    && refreshTokenRepository.existsByFamilyAndRevokedFalse(token.getFamily());
+            if (!concurrentRotation) {
+                logger.warn("Bereits verwendeter Refresh Token des Users mit der Id: {}, alle Tokens des Logins werden widerrufen", token.getUser().getId());
+                refreshTokenRepository.revokeFamily(token.getFamily());
+                throw new InvalidRefreshTokenException("Refresh Token wurde bereits verwendet");
+            }
+        } else {
+            token.setRevoked(true);
+            token.setRotatedAt(now);
+        }
+        User user = token.getUser();
+        return new RotatedRefreshToken(user.getUsername(), issue(user, token.getFamily()));
+    }
+
+    /**
+     * Revokes the refresh token and all other tokens of its login, e.g. on logout.
+     *
+     * @param refreshToken The refresh token presented by the client.
+     */
+    @Override
+    @Transactional
+    public void revoke(String refreshToken) {
+        refreshTokenRepository.findByTokenHash(hash(refreshToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamily()));
+    }
+
+    /**
+     * Revokes the refresh tokens of all logins of a user, e.g. because the user was deleted or its roles changed.
+     *
+     * @param userId The ID of the user.
+     */
+    @Override
+    @Transactional
+    public void revokeAllOfUser(int userId) {
+        int revoked = refreshTokenRepository.revokeAllOfUser(userId);
+        logger.debug("{} Refresh Tokens des Users mit der Id: {} widerrufen", revoked, userId);
+    }
+
+    /**
+     * @return The time a refresh token stays valid after it was issued.
+     */
+    @Override
+    public Duration getLifetime() {
+        return lifetime;
+    }
+
+    private String issue(User user, UUID family) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken token = new RefreshToken();
+        token.setUser(user);
+        token.setFamily(family);
+        token.setTokenHash(hash(refreshToken));
+        token.setExpiresAt(new Date(System.currentTimeMillis() + lifetime.toMillis()));
+        refreshTokenRepository.save(token);
+        return refreshToken;
+    }
+
+    static String hash(String refreshToken) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(refreshToken.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -8,9 +8,12 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import sleep.dto.SleepPersonDto;
+import sleep.dto.SleepSessionCursor;
 import sleep.dto.SleepSessionDto;
 import sleep.dto.SleepSessionResponse;
+import sleep.exceptions.InvalidCursorException;
 import sleep.exceptions.SleepPersonNotFoundException;
 import sleep.models.SleepPerson;
 import sleep.models.SleepSession;
@@ -18,7 +21,11 @@ import sleep.models.User;
 import sleep.repository.SleepPersonRepository;
 import sleep.repository.SleepSessionRepository;
 import sleep.repository.UserRepository;
+import sleep.security.TokenRevocationStore;
+import sleep.security.UserDetailsCache;
+import sleep.service.RefreshTokenService;
 import sleep.service.SleepPersonService;
+import sleep.service.SleepStatsService;
 
 import java.util.Date;
 import java.util.List;
@@ -35,14 +42,26 @@ public class SleepPersonServiceImpl implements SleepPersonService {
 
     private static final Logger logger = LoggerFactory.getLogger(SleepSessionServiceImpl.class);
 
+    /** Upper bound for the page size requested by a client. */
+    static final int MAX_PAGE_SIZE = 100;
+
     private SleepSessionRepository sessionRepository;
     private SleepPersonRepository personRepository;
     private UserRepository userRepository;
+    private SleepStatsService statsService;
+    private UserDetailsCache userDetailsCache;
+    private TokenRevocationStore tokenRevocationStore;
+    private RefreshTokenService refreshTokenService;
 
-    public SleepPersonServiceImpl(final SleepSessionRepository sessionRepository, final SleepPersonRepository personRepository, UserRepository userRepository) {
+    public SleepPersonServiceImpl(final SleepSessionRepository sessionRepository, final SleepPersonRepository personRepository, UserRepository userRepository, final SleepStatsService statsService, final UserDetailsCache userDetailsCache,
+                                  final TokenRevocationStore tokenRevocationStore, final RefreshTokenService refreshTokenService) {
         this.sessionRepository = sessionRepository;
         this.personRepository = personRepository;
         this.userRepository = userRepository;
+        this.statsService = statsService;
+        this.userDetailsCache = userDetailsCache;
+        this.tokenRevocationStore = tokenRevocationStore;
+        this.refreshTokenService = refreshTokenService;
     }
 
     /**
@@ -53,6 +72,7 @@ public class SleepPersonServiceImpl implements SleepPersonService {
      * @return The created SleepPerson as a DTO.
      */
     @Override
+    @Transactional
     public SleepPersonDto createSleepPerson(SleepPersonDto personDto){
         logger.info("Erstelle Person aus dem Dto: {}", personDto.toString());
         SleepPerson person = mapToObject(personDto);
@@ -65,16 +85,22 @@ public class SleepPersonServiceImpl implements SleepPersonService {
     }
 
     /**
-     * Deletes a SleepPerson and its associated User by ID.
+     * Deletes a SleepPerson, its associated User and its statistics by ID.
+     * The access tokens and refresh tokens of the user are revoked, as the access tokens carry the person id.
      *
      * @param id The ID of the SleepPerson to delete.
      */
     @Override
+    @Transactional
     public void deleteSleepPerson(Integer id){
         SleepPerson person = personRepository.findById((long) id).orElseThrow(() -> new SleepPersonNotFoundException("Person konnte nicht gelöscht werden!"));
         User user = person.getUser();
         logger.info("Die Person mit der Id: {} und der User mit dem Username: {} werden gelöscht", id, user.getUsername());
+        statsService.deleteStatsOfPerson(id);
+        refreshTokenService.revokeAllOfUser(user.getId());
+        tokenRevocationStore.revokeUser(user.getId());
         userRepository.delete(user);
+        userDetailsCache.evict(user.getUsername());
     }
 
     /**
@@ -85,6 +111,7 @@ public class SleepPersonServiceImpl implements SleepPersonService {
      * @return The updated SleepPerson as a DTO.
      */
     @Override
+    @Transactional
     public SleepPersonDto updateSleepPerson(SleepPersonDto personDto, Integer id){
         logger.info("Die Person mit der Id: {} wird verändert mit dem Dto: {}", id, personDto.toString());
         SleepPerson person = personRepository.findById((long) id).orElseThrow(() -> new SleepPersonNotFoundException("Person konnte nicht geupdated werden!"));
@@ -103,6 +130,7 @@ public class SleepPersonServiceImpl implements SleepPersonService {
      * @return The SleepPerson as a DTO.
      */
     @Override
+    @Transactional(readOnly = true)
     public SleepPersonDto getSleepPerson(Integer id){
         logger.info("Hole die Person mit der Id: {}", id);
         SleepPerson person = personRepository.findById(Long.valueOf(id)).orElseThrow(() -> new SleepPersonNotFoundException("Person konnte nicht gefunden werden!"));
@@ -119,10 +147,11 @@ public class SleepPersonServiceImpl implements SleepPersonService {
      * @return A paginated response containing SleepSessions.
      */
     @Override
+    @Transactional(readOnly = true)
     public SleepSessionResponse getAllSessionsByPersonId(int id, int pageNo, int pageSize) {
         logger.info("Hole alle Sessions von der Person mit der Id: {}", id);
         logger.debug("Die PageNo sind {} und die Pagesize: {}", pageNo, pageSize);
-        Pageable pageable = PageRequest.of(pageNo, pageSize);
+        Pageable pageable = PageRequest.of(pageNo, capPageSize(pageSize));
         SleepPerson person = personRepository.getReferenceById((long) id);
         Page<SleepSession> sessions = sessionRepository.findByPerson(person, pageable);
         List<SleepSession> listOfSessions = sessions.getContent();
@@ -151,10 +180,11 @@ public class SleepPersonServiceImpl implements SleepPersonService {
      * @return A paginated response containing SleepSessions.
      */
     @Override
+    @Transactional(readOnly = true)
     public SleepSessionResponse getAllSessionsByDateAndPersonId(Date startDate, Date endDate, int personId, int pageNo, int pageSize) {
         logger.info("Hole alle Sessions von der Person mit der Id: {} von {} bis {}", personId, startDate, endDate);
         logger.debug("Die PageNo sind {} und die Pagesize: {}", pageNo, pageSize);
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("startTime").ascending());
+        Pageable pageable = PageRequest.of(pageNo, capPageSize(pageSize), Sort.by("startTime").ascending());
         SleepPerson person = personRepository.getReferenceById((long) personId);
         Page<SleepSession> sessions = sessionRepository.findByDateBetweenAndPerson(startDate, endDate, person, pageable);
         List<SleepSession> listOfSessions = sessions.getContent();
@@ -172,6 +202,55 @@ public class SleepPersonServiceImpl implements SleepPersonService {
         return sessionResponse;
     }
 
+    /**
+     * Retrieves the SleepSessions for a SleepPerson within a date range using keyset pagination.
+     *
+     * The sessions are ordered by start time and id. Instead of an offset the next page starts
+     * after the position encoded in the cursor, so no count query is executed and the response
+     * contains no total values. Sessions without a start time are not part of this mode: their
+     * position can't be encoded in a cursor, they are left out by both queries.
+     *
+     * @param startDate The start date of the range.
+     * @param endDate The end date of the range.
+     * @param personId The ID of the SleepPerson.
+     * @param cursor The cursor of the previous page, or null/empty for the first page.
+     * @param pageSize The size of each page.
+     * @return A response containing the SleepSessions and the cursor of the next page.
+     * @throws InvalidCursorException if the cursor is not valid.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SleepSessionResponse getSessionsByDateAndPersonIdAfter(Date startDate, Date endDate, int personId, String cursor, int pageSize) {
+        logger.info("Hole Sessions von der Person mit der Id: {} von {} bis {} nach dem Cursor {}", personId, startDate, endDate, cursor);
+        int size = capPageSize(pageSize);
+        // one additional row tells whether there is a next page
+        List<SleepSession> sessions;
+        if (cursor == null || cursor.isEmpty()) {
+            sessions = sessionRepository.findFirstByDateBetweenAndPersonId(startDate, endDate, personId, size + 1);
+        } else {
+            SleepSessionCursor position = SleepSessionCursor.decode(cursor);
+            sessions = sessionRepository.findNextByDateBetweenAndPersonId(startDate, endDate, personId, position.getStartTime(), position.getId(), size + 1);
+        }
+        boolean last = sessions.size() <= size;
+        List<SleepSession> page = last ? sessions : sessions.subList(0, size);
+        SleepSessionResponse sessionResponse = new SleepSessionResponse();
+        sessionResponse.setContent(page.stream()
+                .map(session -> (SleepSessionServiceImpl.mapToDto(session)))
+                .collect(Collectors.toList()));
+        sessionResponse.setPageSize(size);
+        sessionResponse.setLast(last);
+        if (!last) {
+            SleepSession lastSession = page.get(page.size() - 1);
+            sessionResponse.setNextCursor(new SleepSessionCursor(lastSession.getStartTime(), lastSession.getId()).encode());
+        }
+
+        return sessionResponse;
+    }
+
+    private static int capPageSize(int pageSize) {
+        return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+
     static SleepPersonDto mapToDto(SleepPerson person){
         SleepPersonDto personDto = new SleepPersonDto();
         personDto.setId(person.getId());
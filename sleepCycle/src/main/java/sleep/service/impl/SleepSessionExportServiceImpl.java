@@ -0,0 +1,109 @@
+package sleep.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.dto.ExportFormat;
+import sleep.models.SleepSession;
+import sleep.repository.SleepSessionRepository;
+import sleep.service.SleepSessionExportService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the SleepSessionExportService interface.
+ *
+ * Writes the complete session history of a person as CSV or NDJSON. The sessions are read through a
+ * forward-only database cursor and detached after they have been written, so the memory needed for an
+ * export does not depend on the number of sessions.
+ */
+@Service
+public class SleepSessionExportServiceImpl implements SleepSessionExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SleepSessionExportServiceImpl.class);
+
+    static final String CSV_HEADER = "id,startTime,endTime,duration,date,cycles,personalEvaluation";
+
+    private SleepSessionRepository sessionRepository;
+    private EntityManager entityManager;
+    private ObjectMapper objectMapper;
+
+    public SleepSessionExportServiceImpl(final SleepSessionRepository sessionRepository, final EntityManager entityManager, final ObjectMapper objectMapper) {
+        this.sessionRepository = sessionRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes all sessions of a person ordered by start time to the output stream.
+     * The transaction stays open while the rows are written, because the cursor is read lazily.
+     *
+     * @param personId The ID of the SleepPerson.
+     * @param format The format of the export.
+     * @param outputStream The stream the export is written to, it is not closed.
+     * @throws IOException if the export could not be written.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportSessions(int personId, ExportFormat format, OutputStream outputStream) throws IOException {
+        logger.info("Exportiere die Sessions der Person mit der Id: {} als {}", personId, format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        long count = 0;
+        try (Stream<SleepSession> sessions = sessionRepository.streamByPersonId(personId)) {
+            Iterator<SleepSession> iterator = sessions.iterator();
+            while (iterator.hasNext()) {
+                SleepSession session = iterator.next();
+                if (format == ExportFormat.CSV) {
+                    writeCsvRow(writer, session);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(SleepSessionServiceImpl.mapToDto(session)));
+                    writer.write('\n');
+                }
+                entityManager.detach(session);
+                count++;
+            }
+        }
+        writer.flush();
+        logger.info("{} Sessions der Person mit der Id: {} exportiert", count, personId);
+    }
+
+    private static void writeCsvRow(Writer writer, SleepSession session) throws IOException {
+        writer.write(String.valueOf(session.getId()));
+        writer.write(',');
+        writer.write(format(session.getStartTime()));
+        writer.write(',');
+        writer.write(format(session.getEndTime()));
+        writer.write(',');
+        writer.write(format(session.getDuration()));
+        writer.write(',');
+        writer.write(format(session.getDate()));
+        writer.write(',');
+        writer.write(format(session.getCycles()));
+        writer.write(',');
+        writer.write(format(session.getPersonalEvaluation()));
+        writer.write('\n');
+    }
+
+    private static String format(Date date) {
+        return date == null ? "" : date.toInstant().toString();
+    }
+
+    private static String format(Integer value) {
+        return value == null ? "" : value.toString();
+    }
+}
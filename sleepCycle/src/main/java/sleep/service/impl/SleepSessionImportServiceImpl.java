@@ -0,0 +1,280 @@
+package sleep.service.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.dto.SessionImportResponse;
+import sleep.dto.SleepSessionDto;
+import sleep.repository.SleepStatsBucketRepository;
+import sleep.service.SleepSessionImportService;
+import sleep.service.SleepSessionService;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Implementation of the SleepSessionImportService interface.
+ *
+ * Imports the session history of a person from a CSV file, e.g. one created by the export or by
+ * another sleep tracker. The file is parsed line by line and the valid rows are streamed with the
+ * PostgreSQL COPY protocol into a temporary staging table. A single statement then moves the rows
+ * into sleep_session, skipping sessions whose start time already exists for the person, and adds
+ * them to the statistics.
+ */
+@Service
+public class SleepSessionImportServiceImpl implements SleepSessionImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SleepSessionImportServiceImpl.class);
+
+    static final int MAX_REPORTED_ERRORS = 20;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMPORARY TABLE sleep_session_import (" +
+            "start_time TIMESTAMP(6), end_time TIMESTAMP(6), duration INTEGER, date TIMESTAMP(6), cycles INTEGER, personal_evaluation INTEGER" +
+            ") ON COMMIT DROP";
+
+    private static final String COPY_STAGING_TABLE = "COPY sleep_session_import (start_time, end_time, duration, date, cycles, personal_evaluation) " +
+            "FROM STDIN (FORMAT csv)";
+
+    // allocationSize of sleep_session_seq, every nextval reserves the ids up to the returned value
+    static final int ID_BLOCK_SIZE = 50;
+
+    // the ids are assigned from blocks of the sequence like the pooled optimizer of Hibernate does, one nextval per
+    // ID_BLOCK_SIZE new rows instead of the column default burning a whole block per row
+    private static final String INSERT_FROM_STAGING_TABLE = "WITH new_sessions AS (" +
+            "SELECT i.*, row_number() OVER (ORDER BY i.start_time) - 1 AS n " +
+            "FROM (SELECT DISTINCT ON (start_time) * FROM sleep_session_import ORDER BY start_time) i " +
+            "WHERE NOT EXISTS (SELECT 1 FROM sleep_session s WHERE s.person_id = ? AND s.start_time = i.start_time)), " +
+            "id_blocks AS (" +
+            "SELECT b, nextval('sleep_session_seq') AS block_end " +
+            "FROM generate_series(0, CAST(CEIL((SELECT COUNT(*) FROM new_sessions) / " + ID_BLOCK_SIZE + ".0) AS INTEGER) - 1) AS b), " +
+            "inserted AS (" +
+            "INSERT INTO sleep_session (id, person_id, start_time, end_time, duration, date, cycles, personal_evaluation) " +
+            "SELECT k.block_end - " + (ID_BLOCK_SIZE - 1) + " + i.n % " + ID_BLOCK_SIZE + ", ?, i.start_time, i.end_time, i.duration, i.date, i.cycles, i.personal_evaluation " +
+            "FROM new_sessions i JOIN id_blocks k ON k.b = i.n / " + ID_BLOCK_SIZE + " " +
+            "RETURNING person_id, start_time, duration, personal_evaluation, cycles), " +
+            "buckets AS (" +
+            "INSERT INTO sleep_stats_bucket (person_id, granularity, bucket_start, session_count, sum_duration, sum_evaluation, sum_cycles, sum_duration_sq, sum_cycles_sq, sum_duration_cycles, bad_sessions, duration_count, evaluated_count) " +
+            "SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE), COUNT(*), COALESCE(SUM(duration), 0), COALESCE(SUM(personal_evaluation), 0), SUM(" + SleepStatsBucketRepository.CYCLES_ESTIMATE + "), " +
+            "SUM(" + SleepStatsBucketRepository.DURATION_SQUARED + "), SUM(" + SleepStatsBucketRepository.CYCLES_SQUARED + "), " +
+            "SUM(" + SleepStatsBucketRepository.DURATION_TIMES_CYCLES + "), SUM(" + SleepStatsBucketRepository.BAD_SESSION + "), COUNT(duration), COUNT(personal_evaluation) " +
+            "FROM inserted CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field) " +
+            "GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE) " +
+            "ON CONFLICT (person_id, granularity, bucket_start) DO UPDATE SET " +
+            "session_count = sleep_stats_bucket.session_count + EXCLUDED.session_count, " +
+            "sum_duration = sleep_stats_bucket.sum_duration + EXCLUDED.sum_duration, " +
+            "sum_evaluation = sleep_stats_bucket.sum_evaluation + EXCLUDED.sum_evaluation, " +
+            "sum_cycles = sleep_stats_bucket.sum_cycles + EXCLUDED.sum_cycles, " +
+            "sum_duration_sq = sleep_stats_bucket.sum_duration_sq + EXCLUDED.sum_duration_sq, " +
+            "sum_cycles_sq = sleep_stats_bucket.sum_cycles_sq + EXCLUDED.sum_cycles_sq, " +
+            "sum_duration_cycles = sleep_stats_bucket.sum_duration_cycles + EXCLUDED.sum_duration_cycles, " +
+            "bad_sessions = sleep_stats_bucket.bad_sessions + EXCLUDED.bad_sessions, " +
+            "duration_count = sleep_stats_bucket.duration_count + EXCLUDED.duration_count, " +
+            "evaluated_count = sleep_stats_bucket.evaluated_count + EXCLUDED.evaluated_count) " +
+            "SELECT COUNT(*) FROM inserted";
+
+    private DataSource dataSource;
+    private OptimizationCache optimizationCache;
+
+    public SleepSessionImportServiceImpl(final DataSource dataSource, final OptimizationCache optimizationCache) {
+        this.dataSource = dataSource;
+        this.optimizationCache = optimizationCache;
+    }
+
+    /**
+     * Imports the sessions of a CSV file for a person.
+     *
+     * The first line has to name the columns. startTime and endTime are required, duration, date, cycles and
+     * personalEvaluation are optional and other columns like id are ignored. Timestamps are ISO-8601 values with
+     * or without offset. Date and duration are completed the same way as for sessions entered in the form.
+     *
+     * @param personId The ID of the SleepPerson the sessions belong to.
+     * @param csv The content of the CSV file.
+     * @return The number of read, imported, duplicate and rejected rows.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the header of the file is not valid.
+     */
+    @Override
+    @Transactional
+    public SessionImportResponse importSessions(int personId, InputStream csv) throws IOException {
+        logger.info("Importiere Sessions für die Person mit der Id: {}", personId);
+        long start = System.currentTimeMillis();
+        SessionImportResponse response = new SessionImportResponse();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        Map<String, Integer> columns = parseHeader(reader.readLine());
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING_TABLE);
+            }
+            long staged = copyToStagingTable(connection, reader, columns, response);
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_FROM_STAGING_TABLE)) {
+                statement.setInt(1, personId);
+                statement.setInt(2, personId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    response.setImported(resultSet.getLong(1));
+                }
+            }
+            response.setDuplicates(staged - response.getImported());
+            optimizationCache.evict(personId);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Sessions konnten nicht importiert werden", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        logger.info("{} Sessions in {} ms importiert, {} Duplikate, {} abgelehnt", response.getImported(),
+                System.currentTimeMillis() - start, response.getDuplicates(), response.getRejected());
+        return response;
+    }
+
+    private long copyToStagingTable(Connection connection, BufferedReader reader, Map<String, Integer> columns, SessionImportResponse response) throws SQLException, IOException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING_TABLE);
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 256);
+            long staged = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                response.setRows(response.getRows() + 1);
+                try {
+                    SleepSessionDto session = parseRow(line.split(",", -1), columns);
+                    String error = SleepSessionServiceImpl.validate(session);
+                    if (error != null) {
+                        reject(response, error);
+                        continue;
+                    }
+                    appendCopyRow(buffer, session);
+                    staged++;
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    reject(response, e.getMessage());
+                    continue;
+                }
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            writeToCopy(copyIn, buffer);
+            copyIn.endCopy();
+            return staged;
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private static void reject(SessionImportResponse response, String error) {
+        response.setRejected(response.getRejected() + 1);
+        if (response.getErrors().size() < MAX_REPORTED_ERRORS) {
+            response.getErrors().add("Zeile " + (response.getRows() + 1) + ": " + error);
+        }
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    static Map<String, Integer> parseHeader(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("Die Datei ist leer");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = header.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(normalize(names[i]), i);
+        }
+        if (!columns.containsKey("starttime") || !columns.containsKey("endtime")) {
+            throw new IllegalArgumentException("Die Spalten startTime und endTime fehlen");
+        }
+        return columns;
+    }
+
+    static SleepSessionDto parseRow(String[] values, Map<String, Integer> columns) {
+        SleepSessionDto session = new SleepSessionDto();
+        session.setStartTime(parseDate(value(values, columns, "starttime")));
+        session.setEndTime(parseDate(value(values, columns, "endtime")));
+        session.setDuration(parseInteger(value(values, columns, "duration")));
+        session.setDate(parseDate(value(values, columns, "date")));
+        session.setCycles(parseInteger(value(values, columns, "cycles")));
+        session.setPersonalEvaluation(parseInteger(value(values, columns, "personalevaluation")));
+        return SleepSessionService.setAttributesForSessionDto(session);
+    }
+
+    private static String value(String[] values, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= values.length) {
+            return null;
+        }
+        String value = values[index].trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1).trim();
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Date parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Date.from(OffsetDateTime.parse(value).toInstant());
+        } catch (DateTimeParseException e) {
+            return Date.from(LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant());
+        }
+    }
+
+    private static Integer parseInteger(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ungültige Zahl: " + value);
+        }
+    }
+
+    private static void appendCopyRow(StringBuilder buffer, SleepSessionDto session) {
+        // sleep_session stores local timestamps of the JVM time zone, the same way Hibernate writes them
+        buffer.append(toLocal(session.getStartTime())).append(',')
+                .append(toLocal(session.getEndTime())).append(',')
+                .append(session.getDuration() == null ? "" : session.getDuration()).append(',')
+                .append(toLocal(session.getDate())).append(',')
+                .append(session.getCycles() == null ? "" : session.getCycles()).append(',')
+                .append(session.getPersonalEvaluation() == null ? "" : session.getPersonalEvaluation()).append('\n');
+    }
+
+    private static String toLocal(Date date) {
+        return date == null ? "" : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()).toString();
+    }
+
+    private static String normalize(String column) {
+        return column.trim().replace("\"", "").replace("_", "").toLowerCase();
+    }
+}
@@ -3,6 +3,9 @@ package sleep.service.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.dto.BulkSessionResponse;
+import sleep.dto.BulkSessionResult;
 import sleep.dto.SleepSessionDto;
 import sleep.exceptions.SleepPersonNotFoundException;
 import sleep.exceptions.SleepSessionNotFoundException;
@@ -11,11 +14,16 @@ import sleep.models.SleepSession;
 import sleep.repository.SleepPersonRepository;
 import sleep.repository.SleepSessionRepository;
 import sleep.service.SleepSessionService;
+import sleep.service.SleepStatsService;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Implementation of SleepSessionService to manage SleepSession entities.
  *
  * Provides methods to create, update, delete, and retrieve SleepSession entities.
+ * Every change evicts the cached optimization of the affected persons.
  */
 @Service
 public class SleepSessionServiceImpl implements SleepSessionService {
@@ -24,52 +32,115 @@ public class SleepSessionServiceImpl implements SleepSessionService {
 
     private SleepSessionRepository sessionRepository;
     private SleepPersonRepository personRepository;
+    private SleepStatsService statsService;
+    private OptimizationCache optimizationCache;
 
-    public SleepSessionServiceImpl(final SleepPersonRepository personRepository, final SleepSessionRepository sessionRepository) {
+    public SleepSessionServiceImpl(final SleepPersonRepository personRepository, final SleepSessionRepository sessionRepository, final SleepStatsService statsService, final OptimizationCache optimizationCache) {
         this.personRepository = personRepository;
         this.sessionRepository = sessionRepository;
+        this.statsService = statsService;
+        this.optimizationCache = optimizationCache;
     }
 
     /**
      * Creates a new SleepSession based on the provided DTO.
-     * Links the session to an existing SleepPerson.
+     * Links the session to an existing SleepPerson and adds it to the person's statistics.
      *
      * @param sessionDto DTO containing data for the new SleepSession.
      * @return The created SleepSession as a DTO.
      */
     @Override
+    @Transactional
     public SleepSessionDto createSleepSession(SleepSessionDto sessionDto){
         logger.info("Erstelle Session aus dem Dto: {}", sessionDto.toString());
         SleepSession session = mapToObject(sessionDto);
         SleepPerson person = personRepository.findById(Long.valueOf(sessionDto.getPersonId())).orElseThrow(() -> new SleepPersonNotFoundException("Person konnte nicht gefunden werden!"));
         session.setPerson(person);
         SleepSession newSession = sessionRepository.save(session);
+        statsService.addSession(newSession);
+        optimizationCache.evict(person.getId());
         return mapToDto(newSession);
     }
 
     /**
-     * Deletes a SleepSession by ID.
+     * Creates several SleepSessions of one SleepPerson within one transaction.
+     * The person is loaded once, invalid sessions are rejected individually and all valid sessions
+     * are inserted with JDBC batch inserts. Their ids come from the pooled sequence, so no round trip
+     * per insert is needed, and the statistics are updated with one statement for all sessions.
+     *
+     * @param sessionDtos DTOs containing data for the new SleepSessions.
+     * @param personId The ID of the SleepPerson owning all sessions.
+     * @return The result of every session in the order of the DTOs.
+     */
+    @Override
+    @Transactional
+    public BulkSessionResponse createSleepSessions(List<SleepSessionDto> sessionDtos, int personId){
+        logger.info("Erstelle {} Sessions für die Person mit der Id: {}", sessionDtos.size(), personId);
+        SleepPerson person = personRepository.findById((long) personId).orElseThrow(() -> new SleepPersonNotFoundException("Person konnte nicht gefunden werden!"));
+        List<BulkSessionResult> results = new ArrayList<>(sessionDtos.size());
+        List<SleepSession> sessions = new ArrayList<>(sessionDtos.size());
+        List<BulkSessionResult> createdResults = new ArrayList<>(sessionDtos.size());
+        for (int i = 0; i < sessionDtos.size(); i++) {
+            SleepSessionDto sessionDto = sessionDtos.get(i);
+            String error = validate(sessionDto);
+            if (error != null) {
+                results.add(new BulkSessionResult(i, BulkSessionResult.Status.REJECTED, null, error));
+                continue;
+            }
+            SleepSession session = mapToObject(sessionDto);
+            session.setId(0);
+            session.setPerson(person);
+            sessions.add(session);
+            BulkSessionResult result = new BulkSessionResult(i, BulkSessionResult.Status.CREATED, null, null);
+            createdResults.add(result);
+            results.add(result);
+        }
+        sessionRepository.saveAllAndFlush(sessions);
+        statsService.addSessions(sessions);
+        optimizationCache.evict(personId);
+        for (int i = 0; i < sessions.size(); i++) {
+            createdResults.get(i).setId(sessions.get(i).getId());
+        }
+        BulkSessionResponse response = new BulkSessionResponse();
+        response.setCreated(sessions.size());
+        response.setRejected(results.size() - sessions.size());
+        response.setResults(results);
+        logger.info("{} Sessions erstellt, {} abgelehnt", response.getCreated(), response.getRejected());
+        return response;
+    }
+
+    /**
+     * Deletes a SleepSession by ID and removes it from the person's statistics.
      *
      * @param id The ID of the SleepSession to delete.
      */
     @Override
+    @Transactional
     public void deleteSleepSession(Integer id){
         logger.info("Lösche Session mit der id" + id);
         SleepSession session = sessionRepository.findById((long) id).orElseThrow(() -> new SleepSessionNotFoundException("Session konnte nicht gelöscht werden!"));
+        statsService.removeSession(session);
         sessionRepository.deleteById((long) id);
+        if (session.getPerson() != null) {
+            optimizationCache.evict(session.getPerson().getId());
+        }
     }
 
     /**
      * Updates an existing SleepSession using data from the provided DTO.
+     * The previous values are replaced by the new ones in the person's statistics.
      *
      * @param sessionDto DTO containing updated data for the SleepSession.
      * @param id The ID of the SleepSession to update.
      * @return The updated SleepSession as a DTO.
      */
     @Override
+    @Transactional
     public SleepSessionDto updateSleepSession(SleepSessionDto sessionDto, Integer id){
         logger.info("Verändere Session mit der id {} und den Werten: {}", id, sessionDto.toString());
         SleepSession session = sessionRepository.findById((long) id).orElseThrow(() -> new SleepSessionNotFoundException("Session konnte nicht geupdated werden!"));
+        SleepSession previousSession = mapToObject(mapToDto(session));
+        previousSession.setPerson(session.getPerson());
         session.setStartTime(sessionDto.getStartTime());
         session.setEndTime(sessionDto.getEndTime());
         session.setDuration(sessionDto.getDuration());
@@ -79,6 +150,12 @@ public class SleepSessionServiceImpl implements SleepSessionService {
         SleepPerson sleepPerson = personRepository.findById(Long.valueOf(sessionDto.getPersonId())).orElseThrow(() -> new SleepPersonNotFoundException("Eine zutreffende Person konnte nicht gefunden werden"));
         session.setPerson(sleepPerson);
         sessionRepository.save(session);
+        statsService.removeSession(previousSession);
+        statsService.addSession(session);
+        if (previousSession.getPerson() != null) {
+            optimizationCache.evict(previousSession.getPerson().getId());
+        }
+        optimizationCache.evict(sleepPerson.getId());
         sessionDto.setPersonId(sleepPerson.getId());
         sessionDto.setId(id);
         return sessionDto;
@@ -91,12 +168,29 @@ public class SleepSessionServiceImpl implements SleepSessionService {
      * @return The SleepSession as a DTO.
      */
     @Override
+    @Transactional(readOnly = true)
     public SleepSessionDto getSleepSession(Integer id){
         logger.info("Hole Session mit der Id" + id);
         SleepSession session = sessionRepository.findById(Long.valueOf(id)).orElseThrow(() -> new SleepSessionNotFoundException("Session konnte nicht gefunden werden!"));
         return mapToDto(session);
     }
 
+    static String validate(SleepSessionDto sessionDto) {
+        if (sessionDto == null) {
+            return "Leere Session";
+        }
+        if (sessionDto.getStartTime() == null || sessionDto.getEndTime() == null) {
+            return "Start- und Endzeit müssen angegeben werden";
+        }
+        if (!sessionDto.getEndTime().after(sessionDto.getStartTime())) {
+            return "Die Endzeit muss nach der Startzeit liegen";
+        }
+        if (sessionDto.getPersonalEvaluation() != null && (sessionDto.getPersonalEvaluation() < 1 || sessionDto.getPersonalEvaluation() > 10)) {
+            return "Die Bewertung muss zwischen 1 und 10 liegen";
+        }
+        return null;
+    }
+
     static SleepSessionDto mapToDto(SleepSession session){
         SleepSessionDto sessionDto = new SleepSessionDto();
         sessionDto.setId(session.getId());
@@ -0,0 +1,218 @@
+package sleep.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import sleep.dto.DurationStatsDto;
+import sleep.dto.OverviewStatsDto;
+import sleep.models.SleepSession;
+import sleep.repository.SleepStatsBucketRepository;
+import sleep.repository.SleepStatsBucketRepository.DurationStats;
+import sleep.repository.SleepStatsBucketRepository.OverviewStats;
+import sleep.service.SleepStatsService;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Collection;
+import java.util.Date;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of the SleepStatsService interface.
+ *
+ * Maintains the per-person rollup of sleep sessions in daily, weekly and monthly buckets.
+ * Every session write applies its delta to the three buckets the session belongs to, so that
+ * statistics can be read from a handful of bucket rows instead of the whole session history.
+ */
+@Service
+public class SleepStatsServiceImpl implements SleepStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SleepStatsServiceImpl.class);
+
+    private SleepStatsBucketRepository bucketRepository;
+
+    public SleepStatsServiceImpl(final SleepStatsBucketRepository bucketRepository) {
+        this.bucketRepository = bucketRepository;
+    }
+
+    /**
+     * Adds a session to the buckets of its person.
+     * Has to be called within the transaction that persists the session.
+     *
+     * @param session The session that has been created.
+     */
+    @Override
+    @Transactional
+    public void addSession(SleepSession session) {
+        applyDelta(session, 1);
+    }
+
+    /**
+     * Adds several sessions to the buckets of their persons, e.g. after a bulk insert.
+     * The sessions are aggregated from the sleep_session table with one statement, so they have to be
+     * flushed within the current transaction before.
+     *
+     * @param sessions The sessions that have been created.
+     */
+    @Override
+    @Transactional
+    public void addSessions(Collection<SleepSession> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        bucketRepository.addPersistedSessions(sessions.stream().map(SleepSession::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Removes a session from the buckets of its person and deletes buckets that became empty.
+     * Has to be called within the transaction that deletes or changes the session.
+     *
+     * @param session The session with the values that have been persisted so far.
+     */
+    @Override
+    @Transactional
+    public void removeSession(SleepSession session) {
+        if (applyDelta(session, -1)) {
+            bucketRepository.deleteEmptyBuckets(session.getPerson().getId());
+        }
+    }
+
+    /**
+     * Deletes all buckets of a person, e.g. when the person is deleted.
+     *
+     * @param personId The ID of the SleepPerson.
+     */
+    @Override
+    @Transactional
+    public void deleteStatsOfPerson(int personId) {
+        logger.info("Lösche die Statistiken der Person mit der Id: {}", personId);
+        bucketRepository.deleteByPersonId(personId);
+    }
+
+    /**
+     * Retrieves the aggregates for the personal overview of a SleepPerson from the buckets.
+     * The 7-day and month averages are read from the daily buckets, the year averages from the
+     * weekly buckets and the totals from the monthly buckets.
+     *
+     * @param personId The ID of the SleepPerson.
+     * @return The overview statistics as a DTO.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public OverviewStatsDto getOverviewStats(int personId) {
+        logger.info("Ermittle die Übersichtsdaten für die Person mit der Id: {}", personId);
+        LocalDate today = LocalDate.now();
+        OverviewStats stats = bucketRepository.overviewStatsByPersonId(personId, today.minusWeeks(1), today.minusMonths(1), startOfWeek(today.minusYears(1)));
+        return mapToDto(stats);
+    }
+
+    /**
+     * Sums up the durations and cycles of the sessions of a person that started on or after the day of the given date.
+     * Only the daily buckets of the window are read, independent of the number of sessions.
+     *
+     * @param personId The ID of the SleepPerson.
+     * @param since The start of the time window.
+     * @return The sums of the sessions within the window.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public DurationStatsDto getDurationStatsSince(int personId, Date since) {
+        return mapToDto(bucketRepository.durationStatsSince(personId, toLocalDate(since)));
+    }
+
+    /**
+     * Sums up the durations and cycles of all sessions of a person from the monthly buckets.
+     *
+     * @param personId The ID of the SleepPerson.
+     * @return The sums of all sessions.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public DurationStatsDto getDurationStats(int personId) {
+        return mapToDto(bucketRepository.durationStats(personId));
+    }
+
+    /**
+     * Recomputes all buckets from the sleep_session table.
+     */
+    @Override
+    @Transactional
+    public void rebuild() {
+        logger.info("Baue die Statistiken aller Personen aus den Sessions neu auf");
+        bucketRepository.deleteAllBuckets();
+        bucketRepository.rebuildFromSessions();
+    }
+
+    /**
+     * Fills the buckets on startup if sessions exist that have never been rolled up,
+     * e.g. after the rollup table has been introduced.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (bucketRepository.needsRebuild()) {
+            rebuild();
+        }
+    }
+
+    private boolean applyDelta(SleepSession session, int sign) {
+        if (session.getPerson() == null || session.getStartTime() == null) {
+            logger.debug("Session ohne Person oder Startzeit wird in den Statistiken nicht berücksichtigt");
+            return false;
+        }
+        LocalDate day = toLocalDate(session.getStartTime());
+        long duration = session.getDuration() == null ? 0 : session.getDuration();
+        long evaluation = session.getPersonalEvaluation() == null ? 0 : session.getPersonalEvaluation();
+        long cycles = OptimizationServiceImpl.estimateCycles(session);
+        long bad = session.getPersonalEvaluation() != null && session.getPersonalEvaluation() < 6 ? 1 : 0;
+        bucketRepository.applyDelta(session.getPerson().getId(), day, startOfWeek(day), day.withDayOfMonth(1),
+                sign, sign * duration, sign * evaluation, sign * cycles, sign * (double) duration * duration,
+                sign * cycles * cycles, sign * duration * cycles, sign * bad,
+                session.getDuration() == null ? 0 : sign, session.getPersonalEvaluation() == null ? 0 : sign);
+        return true;
+    }
+
+    static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    static LocalDate startOfWeek(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    static OverviewStatsDto mapToDto(OverviewStats stats){
+        OverviewStatsDto statsDto = new OverviewStatsDto();
+        if (stats == null) {
+            return statsDto;
+        }
+        statsDto.setTotalSessions(stats.getTotalSessions() == null ? 0 : stats.getTotalSessions());
+        statsDto.setTotalDuration(stats.getTotalDuration() == null ? 0 : stats.getTotalDuration());
+        statsDto.setAvg7DaysDuration(stats.getAvg7DaysDuration());
+        statsDto.setAvgMonthDuration(stats.getAvgMonthDuration());
+        statsDto.setAvgYearDuration(stats.getAvgYearDuration());
+        statsDto.setAvg7DaysEvaluation(stats.getAvg7DaysEvaluation());
+        statsDto.setAvgMonthEvaluation(stats.getAvgMonthEvaluation());
+        statsDto.setAvgYearEvaluation(stats.getAvgYearEvaluation());
+        return statsDto;
+    }
+
+    static DurationStatsDto mapToDto(DurationStats stats) {
+        DurationStatsDto statsDto = new DurationStatsDto();
+        if (stats == null) {
+            return statsDto;
+        }
+        statsDto.setSessionCount(stats.getSessionCount() == null ? 0 : stats.getSessionCount());
+        statsDto.setSumDuration(stats.getSumDuration() == null ? 0 : stats.getSumDuration());
+        statsDto.setSumDurationSq(stats.getSumDurationSq() == null ? 0 : stats.getSumDurationSq());
+        statsDto.setSumCycles(stats.getSumCycles() == null ? 0 : stats.getSumCycles());
+        statsDto.setSumCyclesSq(stats.getSumCyclesSq() == null ? 0 : stats.getSumCyclesSq());
+        statsDto.setSumDurationCycles(stats.getSumDurationCycles() == null ? 0 : stats.getSumDurationCycles());
+        statsDto.setBadSessions(stats.getBadSessions() == null ? 0 : stats.getBadSessions());
+        return statsDto;
+    }
+}
@@ -0,0 +1,20 @@
+-- Sum of the squared cycles and of the products of duration and cycles per bucket, so the variance of the cycle
+-- length (mean duration divided by mean cycles) can be estimated by the delta method, taking the variation of the
+-- cycles into account. Both sums are additive and maintained by the same deltas as the other columns.
+ALTER TABLE sleep_stats_bucket
+    ADD COLUMN sum_cycles_sq       BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN sum_duration_cycles BIGINT NOT NULL DEFAULT 0;
+
+UPDATE sleep_stats_bucket b
+SET sum_cycles_sq       = s.sum_cycles_sq,
+    sum_duration_cycles = s.sum_duration_cycles
+FROM (SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE) AS bucket_start,
+             SUM(c.cycles * c.cycles) AS sum_cycles_sq,
+             SUM(CAST(COALESCE(duration, 0) AS BIGINT) * c.cycles) AS sum_duration_cycles
+      FROM sleep_session
+      CROSS JOIN LATERAL (SELECT COALESCE(cycles, CASE WHEN COALESCE(duration, 0) / 60000 < 395 THEN 4
+                                                       WHEN COALESCE(duration, 0) / 60000 < 485 THEN 5 ELSE 6 END) AS cycles) c
+      CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field)
+      WHERE person_id IS NOT NULL AND start_time IS NOT NULL
+      GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE)) s
+WHERE b.person_id = s.person_id AND b.granularity = s.granularity AND b.bucket_start = s.bucket_start;
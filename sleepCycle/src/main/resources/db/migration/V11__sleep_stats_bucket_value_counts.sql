@@ -0,0 +1,17 @@
+-- Number of sessions with a duration and with a personal evaluation per bucket. The averages of the overview divide
+-- the sums by these counts instead of session_count, so sessions without a value don't pull the averages toward 0,
+-- like AVG ignores NULL values. Both counts are additive and maintained by the same deltas as the other columns.
+ALTER TABLE sleep_stats_bucket
+    ADD COLUMN duration_count  INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN evaluated_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE sleep_stats_bucket b
+SET duration_count  = s.duration_count,
+    evaluated_count = s.evaluated_count
+FROM (SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE) AS bucket_start,
+             COUNT(duration) AS duration_count,
+             COUNT(personal_evaluation) AS evaluated_count
+      FROM sleep_session CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field)
+      WHERE person_id IS NOT NULL AND start_time IS NOT NULL
+      GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE)) s
+WHERE b.person_id = s.person_id AND b.granularity = s.granularity AND b.bucket_start = s.bucket_start;
@@ -0,0 +1,3 @@
+-- The optimizer reads its statistics from sleep_stats_bucket, no query sorts the sessions of a person by their
+-- evaluation any more. Every insert, bulk insert and import would still have to maintain the index.
+DROP INDEX IF EXISTS idx_sleep_session_person_evaluation;
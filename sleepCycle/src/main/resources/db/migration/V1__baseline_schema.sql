@@ -0,0 +1,39 @@
+-- Schema as it was previously generated by Hibernate (ddl-auto=update).
+-- Existing databases are baselined at this version.
+
+CREATE TABLE roles (
+    id   SERIAL PRIMARY KEY,
+    name VARCHAR(255)
+);
+
+CREATE TABLE users (
+    id       SERIAL PRIMARY KEY,
+    password VARCHAR(255),
+    username VARCHAR(255)
+);
+
+CREATE TABLE user_roles (
+    user_id INTEGER NOT NULL CONSTRAINT fkhfh9dx7w3ubf1co1vdev94g3f REFERENCES users (id),
+    role_id INTEGER NOT NULL CONSTRAINT fkh8ciramu9cc9q3qcqiv4ue8a6 REFERENCES roles (id)
+);
+
+CREATE TABLE sleep_person (
+    id         SERIAL PRIMARY KEY,
+    birth_date TIMESTAMP(6),
+    email      VARCHAR(255),
+    name       VARCHAR(255),
+    weight     INTEGER,
+    user_id    INTEGER NOT NULL CONSTRAINT fkpaqa07iwjoyqmobol5269lvkb REFERENCES users (id),
+    CONSTRAINT uk_a97oakd3ai2cs2k5mkjmuo9rs UNIQUE (user_id)
+);
+
+CREATE TABLE sleep_session (
+    id                  SERIAL PRIMARY KEY,
+    cycles              INTEGER,
+    date                TIMESTAMP(6),
+    duration            INTEGER,
+    end_time            TIMESTAMP(6),
+    personal_evaluation INTEGER,
+    start_time          TIMESTAMP(6),
+    person_id           INTEGER CONSTRAINT fknybqt7gdsxi3jymgg9qqcxvsn REFERENCES sleep_person (id)
+);
@@ -0,0 +1,13 @@
+-- Rollup of the sessions per person, granularity and bucket, see SleepStatsBucket.
+-- Not part of the baseline, databases created by Hibernate before don't have it yet. It is filled from the
+-- sessions at startup while it is empty. All rollup queries select the buckets of one person.
+CREATE TABLE sleep_stats_bucket (
+    bucket_start   DATE         NOT NULL,
+    granularity    VARCHAR(255) NOT NULL CHECK (granularity IN ('DAY', 'WEEK', 'MONTH')),
+    person_id      INTEGER      NOT NULL,
+    session_count  INTEGER      NOT NULL,
+    sum_cycles     BIGINT       NOT NULL,
+    sum_duration   BIGINT       NOT NULL,
+    sum_evaluation BIGINT       NOT NULL,
+    CONSTRAINT sleep_stats_bucket_pkey PRIMARY KEY (person_id, granularity, bucket_start)
+);
@@ -1,5 +1,6 @@
+-- Replaces the former data.sql
 INSERT INTO roles (name)
 SELECT 'USER'
     WHERE NOT EXISTS (
     SELECT 1 FROM roles WHERE name = 'USER'
-);
\ No newline at end of file
+);
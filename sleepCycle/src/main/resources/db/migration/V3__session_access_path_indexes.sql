@@ -0,0 +1,14 @@
+-- findByDateBetweenAndPerson and the keyset pages of getByDate: person, date range, ordered by start time
+CREATE INDEX idx_sleep_session_person_date_start ON sleep_session (person_id, date, start_time);
+
+-- findByPerson and time based selections of a person's sessions
+CREATE INDEX idx_sleep_session_person_start ON sleep_session (person_id, start_time);
+
+-- best rated sessions of a person, read by the optimizer until its statistics moved to sleep_stats_bucket (dropped in V12)
+CREATE INDEX idx_sleep_session_person_evaluation ON sleep_session (person_id, personal_evaluation DESC);
+
+CREATE UNIQUE INDEX ux_users_username ON users (username);
+
+-- replaces the unique constraint generated by Hibernate
+ALTER TABLE sleep_person DROP CONSTRAINT uk_a97oakd3ai2cs2k5mkjmuo9rs;
+CREATE UNIQUE INDEX ux_sleep_person_user_id ON sleep_person (user_id);
@@ -0,0 +1,6 @@
+-- Pooled sequence for SleepSession, every nextval reserves a block of 50 ids for Hibernate
+CREATE SEQUENCE sleep_session_seq INCREMENT BY 50 OWNED BY sleep_session.id;
+SELECT setval('sleep_session_seq', COALESCE((SELECT MAX(id) FROM sleep_session), 0) + 50, false);
+
+ALTER TABLE sleep_session ALTER COLUMN id SET DEFAULT nextval('sleep_session_seq');
+DROP SEQUENCE sleep_session_id_seq;
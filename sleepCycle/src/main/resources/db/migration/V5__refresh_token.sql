@@ -0,0 +1,15 @@
+-- Refresh tokens, only the SHA-256 hash of a token is stored. Rotated tokens stay as revoked rows of their family,
+-- so a reused token can be detected and its whole family revoked.
+CREATE TABLE refresh_token (
+    id          BIGSERIAL PRIMARY KEY,
+    user_id     INTEGER      NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    family      UUID         NOT NULL,
+    token_hash  VARCHAR(64)  NOT NULL,
+    expires_at  TIMESTAMP(6) NOT NULL,
+    rotated_at  TIMESTAMP(6),
+    revoked     BOOLEAN      NOT NULL DEFAULT FALSE
+);
+
+CREATE UNIQUE INDEX ux_refresh_token_token_hash ON refresh_token (token_hash);
+CREATE INDEX idx_refresh_token_family ON refresh_token (family);
+CREATE INDEX idx_refresh_token_user_expires ON refresh_token (user_id, expires_at);
@@ -0,0 +1,8 @@
+-- Access tokens revoked before their expiry, e.g. on logout, keyed by the jti claim.
+-- Rows are only needed until the token would have expired anyway.
+CREATE TABLE revoked_token (
+    jti         VARCHAR(36)  PRIMARY KEY,
+    expires_at  TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_revoked_token_expires ON revoked_token (expires_at);
@@ -0,0 +1,17 @@
+-- Sum of the squared durations and number of bad sessions (evaluation worse than 6) per bucket, so the mean,
+-- variance and share of bad sessions of any window can be read from the buckets. Both sums are additive like the
+-- other columns, so they are maintained by the same deltas when sessions are created, updated or deleted.
+ALTER TABLE sleep_stats_bucket
+    ADD COLUMN sum_duration_sq DOUBLE PRECISION NOT NULL DEFAULT 0,
+    ADD COLUMN bad_sessions    BIGINT           NOT NULL DEFAULT 0;
+
+UPDATE sleep_stats_bucket b
+SET sum_duration_sq = s.sum_duration_sq,
+    bad_sessions    = s.bad_sessions
+FROM (SELECT person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE) AS bucket_start,
+             SUM(CAST(COALESCE(duration, 0) AS DOUBLE PRECISION) * COALESCE(duration, 0)) AS sum_duration_sq,
+             SUM(CASE WHEN personal_evaluation < 6 THEN 1 ELSE 0 END) AS bad_sessions
+      FROM sleep_session CROSS JOIN (VALUES ('DAY', 'day'), ('WEEK', 'week'), ('MONTH', 'month')) AS g(granularity, field)
+      WHERE person_id IS NOT NULL AND start_time IS NOT NULL
+      GROUP BY person_id, g.granularity, CAST(date_trunc(g.field, start_time) AS DATE)) s
+WHERE b.person_id = s.person_id AND b.granularity = s.granularity AND b.bucket_start = s.bucket_start;
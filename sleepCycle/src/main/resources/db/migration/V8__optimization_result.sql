@@ -0,0 +1,12 @@
+-- Optimization results precomputed by the nightly batch, read by the optimization page.
+-- A session write marks the result of its person as stale, stale or outdated rows are recomputed on demand.
+CREATE TABLE optimization_result (
+    person_id            INTEGER      PRIMARY KEY REFERENCES sleep_person (id) ON DELETE CASCADE,
+    duration             BIGINT,
+    duration_lower_bound BIGINT,
+    duration_upper_bound BIGINT,
+    message              VARCHAR(255),
+    duration_message     VARCHAR(255),
+    computed_at          TIMESTAMP(6),
+    stale                BOOLEAN      NOT NULL DEFAULT TRUE
+);
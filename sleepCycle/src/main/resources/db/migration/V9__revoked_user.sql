@@ -0,0 +1,9 @@
+-- Users whose access tokens issued up to revoked_at are rejected, e.g. after the user was deleted or its roles changed.
+-- No foreign key, the row has to outlive a deleted user until its last token would have expired anyway.
+CREATE TABLE revoked_user (
+    user_id     INTEGER      PRIMARY KEY,
+    revoked_at  TIMESTAMP(6) NOT NULL,
+    expires_at  TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_revoked_user_expires ON revoked_user (expires_at);
@@ -0,0 +1,28 @@
+package baseline;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class SleepSession {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+    private Date startTime;
+    private Date endTime;
+    private Integer duration;
+    private Date date;
+    private Integer cycles;
+    private Integer personalEvaluation;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "person_id")
+    private SleepPerson person;
+
+}
@@ -0,0 +1,6 @@
+/**
+ * The entities as they were before Flyway managed the schema, when Hibernate created it with ddl-auto=update.
+ * Used to build the databases the migrations have to upgrade. Kept outside the sleep package, so the
+ * application doesn't scan them.
+ */
+package baseline;
@@ -1,6 +1,8 @@
 package sleep.controller;
 
+import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,14 +17,29 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import sleep.dto.AuthResponseDto;
 import sleep.dto.LoginDto;
+import sleep.dto.RefreshTokenDto;
 import sleep.dto.RegisterDto;
+import sleep.dto.RotatedRefreshToken;
+import sleep.exceptions.InvalidRefreshTokenException;
+import sleep.exceptions.PasswordHashingOverloadedException;
 import sleep.repository.RoleRepository;
 import sleep.repository.UserRepository;
+import sleep.security.CustomUserDetailsService;
 import sleep.security.JwtGenerator;
+import sleep.security.SleepUserDetails;
+import sleep.security.TokenRevocationStore;
+import sleep.security.VerifiedToken;
 import sleep.service.AuthService;
+import sleep.service.RefreshTokenService;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -42,6 +59,18 @@ class AuthControllerTest {
     @Mock
     private AuthService authService;
 
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    @Mock
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Mock
+    private HttpServletRequest request;
+
     @Mock
     private HttpServletResponse response;
 
@@ -149,19 +178,171 @@ class AuthControllerTest {
         assertNull(responseEntity.getBody());
     }
 
+    @Test
+    void testLoginPasswordHashingOverloaded() {
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new PasswordHashingOverloadedException("Zu viele Anmeldungen", 1));
+
+        assertThrows(PasswordHashingOverloadedException.class, () -> authController.login(loginDto, response));
+        verifyNoInteractions(jwtGenerator, response);
+    }
+
+    @Test
+    void testRegisterPasswordHashingOverloaded() {
+        registerDto.setControllPassword("password");
+
+        when(userRepository.existsByUsername("testUser")).thenReturn(false);
+        doThrow(new PasswordHashingOverloadedException("Zu viele Anmeldungen", 1)).when(authService).register(any());
+
+        assertThrows(PasswordHashingOverloadedException.class, () -> authController.register(registerDto));
+    }
+
+    @Test
+    void testLoginSetsRefreshToken() {
+        SleepUserDetails user = new SleepUserDetails("testUser", "password", List.of(new SimpleGrantedAuthority("USER")), 3, 5);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenReturn(authentication);
+        when(jwtGenerator.generateToken(authentication)).thenReturn("testToken");
+        when(refreshTokenService.createRefreshToken(3)).thenReturn("refreshToken");
+        when(refreshTokenService.getLifetime()).thenReturn(Duration.ofDays(14));
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.login(loginDto, response);
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("refreshToken", responseEntity.getBody().getRefreshToken());
+
+        ArgumentCaptor<Cookie> cookieCaptor = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, times(2)).addCookie(cookieCaptor.capture());
+        Cookie cookie = cookieCaptor.getAllValues().get(1);
+
+        assertEquals("refresh_token", cookie.getName());
+        assertEquals("refreshToken", cookie.getValue());
+        assertEquals("/api/auth/", cookie.getPath());
+        assertEquals(14 * 24 * 60 * 60, cookie.getMaxAge());
+        assertTrue(cookie.isHttpOnly());
+    }
+
+    @Test
+    void testRefreshSuccess() {
+        SleepUserDetails user = new SleepUserDetails("testUser", "password", List.of(new SimpleGrantedAuthority("USER")), 3, 5);
+
+        when(refreshTokenService.rotate("oldToken")).thenReturn(new RotatedRefreshToken("testUser", "newToken"));
+        when(refreshTokenService.getLifetime()).thenReturn(Duration.ofDays(14));
+        when(userDetailsService.loadUserByUsername("testUser")).thenReturn(user);
+        when(jwtGenerator.generateToken(any(Authentication.class))).thenReturn("testToken");
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh("oldToken", null, response);
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("testToken", responseEntity.getBody().getToken());
+        assertEquals("newToken", responseEntity.getBody().getRefreshToken());
+
+        ArgumentCaptor<Cookie> cookieCaptor = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, times(2)).addCookie(cookieCaptor.capture());
+        assertEquals("auth_token", cookieCaptor.getAllValues().get(0).getName());
+        assertEquals("testToken", cookieCaptor.getAllValues().get(0).getValue());
+        assertEquals("refresh_token", cookieCaptor.getAllValues().get(1).getName());
+        assertEquals("newToken", cookieCaptor.getAllValues().get(1).getValue());
+    }
+
+    @Test
+    void testRefreshPrefersTokenFromBody() {
+        RefreshTokenDto refreshTokenDto = new RefreshTokenDto();
+        refreshTokenDto.setRefreshToken("bodyToken");
+
+        when(refreshTokenService.rotate("bodyToken")).thenThrow(new InvalidRefreshTokenException("Refresh Token ist unbekannt"));
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh("cookieToken", refreshTokenDto, response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        verify(refreshTokenService, never()).rotate("cookieToken");
+    }
+
+    @Test
+    void testRefreshInvalidToken() {
+        when(refreshTokenService.rotate("oldToken")).thenThrow(new InvalidRefreshTokenException("Refresh Token wurde bereits verwendet"));
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh("oldToken", null, response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        assertNull(responseEntity.getBody());
+        verifyNoInteractions(jwtGenerator);
+
+        ArgumentCaptor<Cookie> cookieCaptor = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookieCaptor.capture());
+        assertEquals("refresh_token", cookieCaptor.getValue().getName());
+        assertEquals(0, cookieCaptor.getValue().getMaxAge());
+    }
+
+    @Test
+    void testRefreshOfDeletedUser() {
+        when(refreshTokenService.rotate("oldToken")).thenReturn(new RotatedRefreshToken("testUser", "newToken"));
+        when(userDetailsService.loadUserByUsername("testUser")).thenThrow(new UsernameNotFoundException("testUser"));
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh("oldToken", null, response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        verifyNoInteractions(jwtGenerator);
+    }
+
+    @Test
+    void testRefreshOfUserWithoutPerson() {
+        SleepUserDetails user = new SleepUserDetails("testUser", "password", List.of(new SimpleGrantedAuthority("USER")), 3, null);
+        when(refreshTokenService.rotate("oldToken")).thenReturn(new RotatedRefreshToken("testUser", "newToken"));
+        when(userDetailsService.loadUserByUsername("testUser")).thenReturn(user);
+
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh("oldToken", null, response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        verify(refreshTokenService).revoke("newToken");
+        verifyNoInteractions(jwtGenerator);
+    }
+
+    @Test
+    void testRefreshWithoutToken() {
+        ResponseEntity<AuthResponseDto> responseEntity = authController.refresh(null, null, response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, responseEntity.getStatusCode());
+        verifyNoInteractions(refreshTokenService);
+    }
+
     @Test
     void testLogout() {
-        ResponseEntity<String> responseEntity = authController.logout(response);
+        Date expiration = new Date(System.currentTimeMillis() + 60000);
+        when(request.getHeader("Authorization")).thenReturn("Bearer testToken");
+        when(jwtGenerator.getVerifiedToken("testToken")).thenReturn(new VerifiedToken("jti", "testUser", new Date(), expiration, null));
+
+        ResponseEntity<String> responseEntity = authController.logout(request, "refreshToken", response);
 
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         assertEquals("Logout erfolgreich", responseEntity.getBody());
+        verify(tokenRevocationStore).revoke("jti", expiration);
+        verify(refreshTokenService).revoke("refreshToken");
 
         ArgumentCaptor<Cookie> cookieCaptor = ArgumentCaptor.forClass(Cookie.class);
-        verify(response).addCookie(cookieCaptor.capture());
-        Cookie cookie = cookieCaptor.getValue();
+        verify(response, times(2)).addCookie(cookieCaptor.capture());
+        Cookie cookie = cookieCaptor.getAllValues().get(0);
 
         assertEquals("auth_token", cookie.getName());
         assertNull(cookie.getValue());
         assertEquals(0, cookie.getMaxAge());
+
+        Cookie refreshCookie = cookieCaptor.getAllValues().get(1);
+        assertEquals("refresh_token", refreshCookie.getName());
+        assertEquals(0, refreshCookie.getMaxAge());
+    }
+
+    @Test
+    void testLogoutWithExpiredToken() {
+        when(request.getHeader("Authorization")).thenReturn("Bearer expiredToken");
+        when(jwtGenerator.getVerifiedToken("expiredToken")).thenThrow(new ExpiredJwtException(null, null, "JWT ist abgelaufen"));
+
+        ResponseEntity<String> responseEntity = authController.logout(request, null, response);
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        verifyNoInteractions(tokenRevocationStore, refreshTokenService);
+        verify(response, times(2)).addCookie(any(Cookie.class));
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package sleep.controller;
 
+import io.jsonwebtoken.MalformedJwtException;
 import jakarta.servlet.http.Cookie;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,20 +10,29 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.test.web.servlet.MockMvc;
-import sleep.dto.SleepSessionResponse;
+import sleep.dto.DurationStatsDto;
+import sleep.dto.OverviewStatsDto;
 import sleep.models.SleepPerson;
 import sleep.models.User;
+import sleep.repository.SleepPersonRepository;
 import sleep.repository.UserRepository;
 import sleep.security.JwtGenerator;
-import sleep.service.SleepPersonService;
+import sleep.security.UserDetailsCache;
+import sleep.security.VerifiedToken;
+import sleep.service.SleepStatsService;
 
-import java.util.ArrayList;
+import java.util.Date;
 import java.util.Optional;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 
@@ -36,11 +46,17 @@ public class HomeControllerTest {
     private UserRepository userRepository;
 
     @MockBean
-    private SleepPersonService personService;
+    private SleepStatsService statsService;
 
     @MockBean
     private JwtGenerator jwtGenerator;
 
+    @MockBean
+    private SleepPersonRepository personRepository;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
     private Cookie authCookie = new Cookie("auth_token", "validToken");
     private User mockUser = new User();
     private SleepPerson mockPerson = new SleepPerson();
@@ -48,8 +64,36 @@ public class HomeControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        userDetailsCache.evictAll();
         mockUser.setPerson(mockPerson);
         mockUser.setUsername("testUser");
+        mockUser.setPassword("password");
+        when(personRepository.findProfileById(0)).thenReturn(Optional.of(new SleepPersonRepository.PersonProfile() {
+            @Override
+            public Integer getId() {
+                return mockPerson.getId();
+            }
+
+            @Override
+            public String getName() {
+                return mockPerson.getName();
+            }
+
+            @Override
+            public String getEmail() {
+                return mockPerson.getEmail();
+            }
+
+            @Override
+            public Date getBirthDate() {
+                return mockPerson.getBirthDate();
+            }
+
+            @Override
+            public Integer getWeight() {
+                return mockPerson.getWeight();
+            }
+        }));
     }
 
     @Test
@@ -75,7 +119,7 @@ public class HomeControllerTest {
 
     @Test
     public void testDisplayGatherSessionsPageAuthenticated() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT("validToken")).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
 
         mockMvc.perform(get("/gatherSleepSessions").cookie(authCookie))
@@ -85,20 +129,44 @@ public class HomeControllerTest {
 
     @Test
     public void testDisplayPersonalOverviewAuthenticated() throws Exception {
-        when(personService.getAllSessionsByPersonId(any(Integer.class),any(Integer.class),any(Integer.class))).thenReturn(new SleepSessionResponse());
-        when(jwtGenerator.getUsernameFromJWT("validToken")).thenReturn("testUser");
+        when(statsService.getOverviewStats(any(Integer.class))).thenReturn(new OverviewStatsDto());
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
-        SleepSessionResponse response = new SleepSessionResponse();
-        response.setContent(new ArrayList<>());
 
         mockMvc.perform(get("/personalOverview").cookie(authCookie))
                 .andExpect(status().isOk())
-                .andExpect(view().name("personalOverview"));
+                .andExpect(view().name("personalOverview"))
+                .andExpect(model().attribute("partialData", false));
+        verify(personRepository, never()).findProfileById(any(Integer.class));
+    }
+
+    @Test
+    public void testDisplayPersonalOverviewWithTimedOutStats() throws Exception {
+        when(statsService.getOverviewStats(any(Integer.class))).thenThrow(new QueryTimeoutException("Abfrage abgebrochen"));
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
+
+        mockMvc.perform(get("/personalOverview").cookie(authCookie))
+                .andExpect(status().isOk())
+                .andExpect(view().name("personalOverview"))
+                .andExpect(model().attribute("totalSessions", 0L))
+                .andExpect(model().attribute("partialData", true));
+    }
+
+    @Test
+    public void testDisplayPersonalOverviewWithoutPerson() throws Exception {
+        mockUser.setPerson(null);
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
+
+        mockMvc.perform(get("/personalOverview").cookie(authCookie))
+                .andExpect(status().isNotFound());
+        verify(statsService, never()).getOverviewStats(any(Integer.class));
     }
 
     @Test
     public void testDisplayProfilePageAuthenticated() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT("validToken")).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
 
         mockMvc.perform(get("/profile").cookie(authCookie))
@@ -108,8 +176,10 @@ public class HomeControllerTest {
 
     @Test
     public void testDisplayOptimizationPageAuthenticated() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT("validToken")).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken("validToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
+        when(statsService.getDurationStatsSince(anyInt(), any())).thenReturn(new DurationStatsDto());
+        when(statsService.getDurationStats(anyInt())).thenReturn(new DurationStatsDto());
 
         mockMvc.perform(get("/optimization").cookie(authCookie))
                 .andExpect(status().isOk())
@@ -118,7 +188,7 @@ public class HomeControllerTest {
 
     @Test
     public void testRedirectToLoginPage() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT("validToken")).thenThrow(NullPointerException.class);
+        when(jwtGenerator.getVerifiedToken("validToken")).thenThrow(new MalformedJwtException("JWT ist ungültig"));
         when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(mockUser));
 
         mockMvc.perform(get("/optimization").cookie(authCookie))
@@ -0,0 +1,168 @@
+package sleep.controller;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import sleep.repository.QueryCountListener;
+import sleep.repository.QueryCountListener.Counts;
+import sleep.security.JwtGenerator;
+import sleep.security.SleepUserDetails;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * Renders the pages against a real database and fails if a template still reaches the database, e.g. through a
+ * lazy loaded association.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class PageRenderingTest {
+
+    private static final EmbeddedPostgres postgres = startDatabase();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JwtGenerator jwtGenerator;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private RenderingQueryCounter renderingQueryCounter;
+
+    private Cookie authCookie;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("TRUNCATE optimization_result, sleep_stats_bucket, sleep_session, sleep_person, users CASCADE");
+        int userId = jdbcTemplate.queryForObject("INSERT INTO users (username, password) VALUES ('test', 'x') RETURNING id", Integer.class);
+        int personId = jdbcTemplate.queryForObject("INSERT INTO sleep_person (name, email, weight, user_id) VALUES ('Test', 'test@example.com', 70, ?) RETURNING id",
+                Integer.class, userId);
+        jdbcTemplate.update("INSERT INTO sleep_session (start_time, end_time, duration, date, cycles, personal_evaluation, person_id) " +
+                "SELECT now() - make_interval(days => d, hours => 8), now() - make_interval(days => d), 28800000, current_date - d, 5, 8, ? " +
+                "FROM generate_series(1, 3) AS d", personId);
+        SleepUserDetails userDetails = new SleepUserDetails("test", "x", List.of(), userId, personId);
+        authCookie = new Cookie("auth_token", jwtGenerator.generateToken(
+                new UsernamePasswordAuthenticationToken(userDetails, null, List.of(new SimpleGrantedAuthority("USER")))));
+    }
+
+    @Test
+    void openSessionInViewIsDisabled() {
+        assertTrue(applicationContext.getBeansOfType(OpenEntityManagerInViewInterceptor.class).isEmpty());
+    }
+
+    @Test
+    void profileIsRenderedWithoutDatabaseAccess() throws Exception {
+        assertRenderedWithoutDatabaseAccess("/profile", "profile");
+    }
+
+    @Test
+    void personalOverviewIsRenderedWithoutDatabaseAccess() throws Exception {
+        assertRenderedWithoutDatabaseAccess("/personalOverview", "personalOverview");
+    }
+
+    @Test
+    void optimizationIsRenderedWithoutDatabaseAccess() throws Exception {
+        assertRenderedWithoutDatabaseAccess("/optimization", "optimization");
+    }
+
+    private void assertRenderedWithoutDatabaseAccess(String path, String viewName) throws Exception {
+        mockMvc.perform(get(path).cookie(authCookie))
+                .andExpect(status().isOk())
+                .andExpect(view().name(viewName));
+
+        Counts counts = renderingQueryCounter.last;
+        assertNotNull(counts, "Seite wurde nicht gerendert");
+        assertEquals(0, counts.getConnections(), "Verbindungen beim Rendern");
+        assertEquals(0, counts.getStatements(), "Statements beim Rendern");
+    }
+
+    private static EmbeddedPostgres startDatabase() {
+        try {
+            return EmbeddedPostgres.start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @TestConfiguration
+    static class RenderingQueryCounterConfiguration implements WebMvcConfigurer {
+
+        @Bean
+        RenderingQueryCounter renderingQueryCounter() {
+            return new RenderingQueryCounter();
+        }
+
+        @Override
+        public void addInterceptors(InterceptorRegistry registry) {
+            registry.addInterceptor(renderingQueryCounter());
+        }
+    }
+
+    /**
+     * Counts the statements and connections between the end of the handler and the end of the rendering.
+     */
+    static class RenderingQueryCounter implements HandlerInterceptor {
+
+        private volatile Counts last;
+
+        @Override
+        public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+            last = null;
+            QueryCountListener.stop();
+            QueryCountListener.start();
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            if (last == null) {
+                last = QueryCountListener.stop();
+                QueryCountListener.start();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package sleep.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+import sleep.repository.QueryCountListener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCountFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final QueryCountFilter filter = new QueryCountFilter(meterRegistry);
+
+    @Test
+    void statementsAndConnectionsAreRecordedPerEndpoint() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sleepPerson/1");
+        QueryCountListener listener = new QueryCountListener();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/sleepPerson/{id}");
+            listener.jdbcConnectionAcquisitionEnd();
+            listener.jdbcExecuteStatementEnd();
+            listener.jdbcExecuteStatementEnd();
+            listener.jdbcExecuteBatchEnd();
+        });
+
+        assertEquals(3, meterRegistry.get("http.server.requests.statements").tag("method", "GET").tag("uri", "/api/sleepPerson/{id}").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("http.server.requests.connections").tag("method", "GET").tag("uri", "/api/sleepPerson/{id}").summary().totalAmount());
+    }
+
+    @Test
+    void countingStopsAfterTheRequest() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("GET", "/unknown"), new MockHttpServletResponse(), (req, res) -> { });
+
+        new QueryCountListener().jdbcExecuteStatementEnd();
+
+        assertEquals(0, QueryCountListener.stop().getStatements());
+        assertEquals(0, meterRegistry.get("http.server.requests.statements").tag("uri", "UNKNOWN").summary().totalAmount());
+    }
+}
@@ -15,8 +15,11 @@ import sleep.models.SleepPerson;
 import sleep.models.User;
 import sleep.repository.UserRepository;
 import sleep.security.JwtGenerator;
+import sleep.security.UserDetailsCache;
+import sleep.security.VerifiedToken;
 import sleep.service.SleepPersonService;
 
+import java.util.Date;
 import java.util.Optional;
 
 import static org.mockito.Mockito.*;
@@ -42,6 +45,9 @@ class SleepPersonControllerTest {
     @MockBean
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
     private int personId = 1;
     private String token = "validToken";
     private String username = "testUser";
@@ -52,8 +58,9 @@ class SleepPersonControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        userDetailsCache.evictAll();
 
-        when(jwtGenerator.getUsernameFromJWT(token)).thenReturn(username);
+        when(jwtGenerator.getVerifiedToken(token)).thenReturn(new VerifiedToken(null, username, new Date(), null, null));
 
         updatedPersonDto = new SleepPersonDto();
         updatedPersonDto.setId(personId);
@@ -63,6 +70,8 @@ class SleepPersonControllerTest {
         person.setId(personId);
 
         user = new User();
+        user.setUsername(username);
+        user.setPassword("password");
         user.setPerson(person);
     }
 
@@ -84,8 +93,9 @@ class SleepPersonControllerTest {
     }
 
     @Test
-    void updateSleepPersonUserNotFound() throws Exception {
-        when(userRepository.findByUsername(username)).thenReturn(Optional.empty());
+    void updateSleepPersonOfOtherUser() throws Exception {
+        person.setId(2);
+        when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
 
         mockMvc.perform(put("/api/person/{id}/update", personId)
                         .with(csrf())
@@ -136,7 +146,8 @@ class SleepPersonControllerTest {
 
     @Test
     void deleteSleepPersonException() throws Exception {
-        when(userRepository.findByUsername(username)).thenThrow(new RuntimeException("Unexpected error"));
+        when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
+        doThrow(new RuntimeException("Unexpected error")).when(personService).deleteSleepPerson(personId);
 
         mockMvc.perform(post("/api/person/{id}/delete", personId)
                         .with(csrf())
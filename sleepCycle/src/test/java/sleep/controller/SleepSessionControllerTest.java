@@ -10,9 +10,17 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import sleep.dto.BulkSessionResponse;
+import sleep.dto.BulkSessionResult;
+import sleep.dto.ExportFormat;
+import sleep.dto.OverviewStatsDto;
+import sleep.dto.SessionImportResponse;
 import sleep.dto.SleepSessionDto;
 import sleep.dto.SleepSessionResponse;
+import sleep.exceptions.InvalidCursorException;
 import sleep.exceptions.SleepPersonNotFoundException;
 import sleep.exceptions.SleepSessionNotFoundException;
 import sleep.models.SleepPerson;
@@ -20,19 +28,37 @@ import sleep.models.SleepSession;
 import sleep.models.User;
 import sleep.repository.SleepSessionRepository;
 import sleep.repository.UserRepository;
+import sleep.security.AuthenticatedUser;
 import sleep.security.JwtGenerator;
+import sleep.security.UserDetailsCache;
+import sleep.security.VerifiedToken;
 import sleep.service.SleepPersonService;
+import sleep.service.SleepSessionExportService;
+import sleep.service.SleepSessionImportService;
 import sleep.service.SleepSessionService;
+import sleep.service.SleepStatsService;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -57,9 +83,21 @@ public class SleepSessionControllerTest {
     @MockBean
     private SleepPersonService personService;
 
+    @MockBean
+    private SleepStatsService statsService;
+
+    @MockBean
+    private SleepSessionExportService exportService;
+
+    @MockBean
+    private SleepSessionImportService importService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
     private String token = "validToken";
     private String username = "testUser";
     private SleepPerson person;
@@ -71,11 +109,13 @@ public class SleepSessionControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        userDetailsCache.evictAll();
 
         response = new SleepSessionResponse();
 
         user = new User();
         user.setUsername(username);
+        user.setPassword("password");
 
         person = new SleepPerson();
         person.setUser(user);
@@ -91,7 +131,7 @@ public class SleepSessionControllerTest {
 
     @Test
     void testGetSleepSessionsByDateSuccess() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
         when(personService.getAllSessionsByDateAndPersonId(any(), any(), anyInt(), anyInt(), anyInt()))
                 .thenReturn(response);
@@ -108,9 +148,23 @@ public class SleepSessionControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void testGetSleepSessionsByDateWithoutUserLookup() throws Exception {
+        when(jwtGenerator.getVerifiedToken(token)).thenReturn(new VerifiedToken(null, username, new Date(), null, new AuthenticatedUser(username, 1, 3, List.of("USER"))));
+        when(personService.getAllSessionsByDateAndPersonId(any(), any(), eq(3), anyInt(), anyInt()))
+                .thenReturn(response);
+
+        mockMvc.perform(get("/api/session/getByDate")
+                        .header("Authorization", "Bearer " + token)
+                        .param("startDate", "2024-01-01")
+                        .param("endDate", "2024-01-10"))
+                .andExpect(status().isOk());
+        verifyNoInteractions(userRepository);
+    }
+
     @Test
     void testGetSleepSessionsByDateExpectInternalServerError() throws Exception {
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
         when(personService.getAllSessionsByDateAndPersonId(any(), any(), anyInt(), anyInt(), anyInt()))
                 .thenThrow(NullPointerException.class);
@@ -129,7 +183,7 @@ public class SleepSessionControllerTest {
     @Test
     void testGetSleepSessionsByDateExpectBadRequest() throws Exception {
         String token = null;
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(new User()));
         when(personService.getAllSessionsByDateAndPersonId(any(), any(), anyInt(), anyInt(), anyInt()))
                 .thenReturn(response);
@@ -145,11 +199,124 @@ public class SleepSessionControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void testGetSleepSessionsByDateWithCursorSuccess() throws Exception {
+        response.setNextCursor("MTcwNDA2NzIwMDAwMDoy");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+        when(personService.getSessionsByDateAndPersonIdAfter(any(), any(), anyInt(), eq(""), anyInt()))
+                .thenReturn(response);
+
+        mockMvc.perform(get("/api/session/getByDate")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .param("startDate", "2024-01-01")
+                        .param("endDate", "2024-01-10")
+                        .param("cursor", "")
+                        .param("pageSize", "10")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value("MTcwNDA2NzIwMDAwMDoy"));
+        verify(personService, never()).getAllSessionsByDateAndPersonId(any(), any(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testGetSleepSessionsByDateWithInvalidCursorExpectBadRequest() throws Exception {
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+        when(personService.getSessionsByDateAndPersonIdAfter(any(), any(), anyInt(), any(), anyInt()))
+                .thenThrow(new InvalidCursorException("Ungültiger Cursor: kein-cursor", null));
+
+        mockMvc.perform(get("/api/session/getByDate")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .param("startDate", "2024-01-01")
+                        .param("endDate", "2024-01-10")
+                        .param("cursor", "kein-cursor")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetSleepSessionsByDateWithInvalidPageExpectBadRequest() throws Exception {
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+        when(personService.getAllSessionsByDateAndPersonId(any(), any(), anyInt(), anyInt(), anyInt()))
+                .thenThrow(new IllegalArgumentException("Page index must not be less than zero"));
+
+        mockMvc.perform(get("/api/session/getByDate")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .param("startDate", "2024-01-01")
+                        .param("endDate", "2024-01-10")
+                        .param("pageNo", "-1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        verify(personService, never()).getSessionsByDateAndPersonIdAfter(any(), any(), anyInt(), any(), anyInt());
+    }
+
+    @Test
+    void testGetOverviewStatsSuccess() throws Exception {
+        OverviewStatsDto statsDto = new OverviewStatsDto();
+        statsDto.setTotalSessions(2);
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+        when(statsService.getOverviewStats(anyInt())).thenReturn(statsDto);
+
+        mockMvc.perform(get("/api/session/overview")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalSessions").value(2));
+    }
+
+    @Test
+    void testGetOverviewStatsExpectBadRequest() throws Exception {
+        mockMvc.perform(get("/api/session/overview")
+                        .with(csrf()))
+                .andExpect(status().isBadRequest());
+    }
+
+
+    @Test
+    void testExportSleepSessionsSuccess() throws Exception {
+        person.setId(3);
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(2);
+            outputStream.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).exportSessions(eq(3), eq(ExportFormat.NDJSON), any());
+
+        MvcResult result = mockMvc.perform(get("/api/session/export")
+                        .cookie(new Cookie("auth_token", token))
+                        .param("format", "ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+
+    @Test
+    void testExportSleepSessionsExpectBadRequest() throws Exception {
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+
+        mockMvc.perform(get("/api/session/export")
+                        .cookie(new Cookie("auth_token", token))
+                        .param("format", "xml"))
+                .andExpect(status().isBadRequest());
+        verify(exportService, never()).exportSessions(anyInt(), any(), any());
+    }
 
     @Test
     void testCreateSleepSessionSuccess() throws Exception {
         when(sessionService.createSleepSession(any())).thenReturn(sessionDto);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
 
@@ -168,7 +335,7 @@ public class SleepSessionControllerTest {
         sessionDto.setDate(new Date());
 
         when(sessionService.createSleepSession(any())).thenThrow(SleepPersonNotFoundException.class);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
 
@@ -183,7 +350,7 @@ public class SleepSessionControllerTest {
     @Test
     void testCreateSleepSessionExpectBadRequest() throws Exception {
         when(sessionService.createSleepSession(any())).thenReturn(sessionDto);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenThrow(NullPointerException.class);
 
 
@@ -195,6 +362,88 @@ public class SleepSessionControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void testCreateSleepSessionsBulkSuccess() throws Exception {
+        person.setId(3);
+        BulkSessionResponse bulkResponse = new BulkSessionResponse();
+        bulkResponse.setCreated(1);
+        bulkResponse.setResults(List.of(new BulkSessionResult(0, BulkSessionResult.Status.CREATED, 5, null)));
+        when(sessionService.createSleepSessions(any(), eq(3))).thenReturn(bulkResponse);
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+
+        mockMvc.perform(post("/api/session/bulk")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(sessionDto))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.results[0].id").value(5));
+        verify(sessionService).createSleepSessions(argThat(sessions -> sessions.get(0).getPersonId() == 3), eq(3));
+    }
+
+    @Test
+    void testCreateSleepSessionsBulkExpectBadRequest() throws Exception {
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.empty());
+
+        mockMvc.perform(post("/api/session/bulk")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(sessionDto))))
+                .andExpect(status().isBadRequest());
+        verify(sessionService, never()).createSleepSessions(any(), anyInt());
+    }
+
+    @Test
+    void testCreateSleepSessionsBulkWithoutBodyExpectBadRequest() throws Exception {
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+
+        mockMvc.perform(post("/api/session/bulk")
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("null"))
+                .andExpect(status().isBadRequest());
+        verify(sessionService, never()).createSleepSessions(any(), anyInt());
+    }
+
+    @Test
+    void testImportSleepSessionsSuccess() throws Exception {
+        person.setId(3);
+        SessionImportResponse importResponse = new SessionImportResponse();
+        importResponse.setRows(1);
+        importResponse.setImported(1);
+        when(importService.importSessions(eq(3), any())).thenReturn(importResponse);
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+
+        mockMvc.perform(multipart("/api/session/import")
+                        .file(new MockMultipartFile("file", "sessions.csv", "text/csv",
+                                "startTime,endTime\n2024-01-01T22:00:00Z,2024-01-02T06:00:00Z\n".getBytes(StandardCharsets.UTF_8)))
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1));
+    }
+
+    @Test
+    void testImportSleepSessionsExpectBadRequest() throws Exception {
+        when(importService.importSessions(anyInt(), any())).thenThrow(new IllegalArgumentException("Die Spalten startTime und endTime fehlen"));
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
+
+        mockMvc.perform(multipart("/api/session/import")
+                        .file(new MockMultipartFile("file", "sessions.csv", "text/csv", "id\n1\n".getBytes(StandardCharsets.UTF_8)))
+                        .with(csrf())
+                        .cookie(new Cookie("auth_token", token)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors[0]").value("Die Spalten startTime und endTime fehlen"));
+    }
+
     @Test
     void testUpdateSleepSessionSuccess() throws Exception {
         sessionDto.setStartTime(new Date());
@@ -205,7 +454,7 @@ public class SleepSessionControllerTest {
 
         when(sleepSessionRepository.findById(any())).thenReturn(java.util.Optional.of(sleepSession));
         when(sessionService.updateSleepSession(any(), any())).thenReturn(sessionDto);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
         mockMvc.perform(put("/api/session/1/update")
@@ -221,7 +470,7 @@ public class SleepSessionControllerTest {
     @Test
     void testUpdateSleepSessionExpectInternalServerError() throws Exception {
         when(sessionService.updateSleepSession(any(), any())).thenThrow(SleepSessionNotFoundException.class);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
         mockMvc.perform(put("/api/session/1/update")
@@ -235,7 +484,7 @@ public class SleepSessionControllerTest {
     @Test
     void testUpdateSleepSessionExpectBadRequest() throws Exception {
         when(sessionService.updateSleepSession(any(), any())).thenReturn(sessionDto);
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenThrow(NullPointerException.class);
 
         mockMvc.perform(put("/api/session/1/update")
@@ -249,7 +498,7 @@ public class SleepSessionControllerTest {
     @Test
     void testDeleteSleepSessionSuccess() throws Exception {
         when(sleepSessionRepository.findById(any())).thenReturn(java.util.Optional.of(session));
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
 
@@ -264,7 +513,7 @@ public class SleepSessionControllerTest {
     void testDeleteSleepSessionExpectInternalServerError() throws Exception {
         doThrow(SleepSessionNotFoundException.class).when(sessionService).deleteSleepSession(any());
         when(sleepSessionRepository.findById(any())).thenReturn(java.util.Optional.of(session));
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenReturn(java.util.Optional.of(user));
 
 
@@ -278,7 +527,7 @@ public class SleepSessionControllerTest {
     @Test
     void testDeleteSleepSessionExpectUnauthorized() throws Exception {
         when(sleepSessionRepository.findById(any())).thenReturn(java.util.Optional.of(session));
-        when(jwtGenerator.getUsernameFromJWT(any())).thenReturn("testUser");
+        when(jwtGenerator.getVerifiedToken(any())).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
         when(userRepository.findByUsername(any())).thenThrow(NullPointerException.class);
 
 
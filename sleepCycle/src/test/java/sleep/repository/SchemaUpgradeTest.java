@@ -0,0 +1,103 @@
+package sleep.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upgrades a database created by Hibernate from the entities before Flyway managed the schema, like the existing
+ * databases are upgraded: baselined at V1, then migrated. The current entities have to validate against the result.
+ */
+class SchemaUpgradeTest {
+
+    private EmbeddedPostgres postgres;
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        dataSource = postgres.getPostgresDatabase();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        postgres.close();
+    }
+
+    @Test
+    void databaseCreatedByHibernateIsUpgraded() {
+        buildSessionFactory("update", baseline.Role.class, baseline.User.class, baseline.SleepPerson.class, baseline.SleepSession.class).close();
+        jdbcTemplate.update("INSERT INTO roles (name) VALUES ('USER')");
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('test', 'x')");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r");
+        jdbcTemplate.update("INSERT INTO sleep_person (name, user_id) SELECT username, id FROM users");
+        jdbcTemplate.update("INSERT INTO sleep_session (start_time, end_time, duration, date, personal_evaluation, person_id) " +
+                "SELECT TIMESTAMP '2024-01-01 22:00' + i * INTERVAL '1 day', TIMESTAMP '2024-01-02 06:00' + i * INTERVAL '1 day', " +
+                "28800000, TIMESTAMP '2024-01-01' + i * INTERVAL '1 day', 7, p.id FROM sleep_person p, generate_series(1, 10) i");
+
+        MigrateResult result = Flyway.configure().dataSource(dataSource).baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+        assertTrue(result.success);
+        assertEquals("1", jdbcTemplate.queryForObject("SELECT version FROM flyway_schema_history WHERE type = 'BASELINE'", String.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM roles WHERE name = 'USER'", Integer.class));
+        assertEquals(List.of("person_id", "granularity", "bucket_start"), primaryKey("sleep_stats_bucket"));
+        int maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM sleep_session", Integer.class);
+        assertTrue(jdbcTemplate.queryForObject("SELECT nextval('sleep_session_seq')", Integer.class) > maxId);
+        assertCurrentEntitiesValidate();
+    }
+
+    @Test
+    void emptyDatabaseIsMigrated() {
+        MigrateResult result = Flyway.configure().dataSource(dataSource).baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+        assertTrue(result.success);
+        assertEquals(List.of("person_id", "granularity", "bucket_start"), primaryKey("sleep_stats_bucket"));
+        assertCurrentEntitiesValidate();
+    }
+
+    private void assertCurrentEntitiesValidate() {
+        assertDoesNotThrow(() -> buildSessionFactory("validate", sleep.models.Role.class, sleep.models.User.class,
+                sleep.models.SleepPerson.class, sleep.models.SleepSession.class, sleep.models.SleepStatsBucket.class,
+                sleep.models.RefreshToken.class, sleep.models.RevokedToken.class, sleep.models.RevokedUser.class, sleep.models.OptimizationResult.class).close());
+    }
+
+    private List<String> primaryKey(String table) {
+        return jdbcTemplate.queryForList("SELECT a.attname FROM pg_index i " +
+                "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY(i.indkey) " +
+                "WHERE i.indrelid = ?::regclass AND i.indisprimary ORDER BY array_position(i.indkey, a.attnum)", String.class, table);
+    }
+
+    private SessionFactory buildSessionFactory(String schemaAction, Class<?>... entities) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DATASOURCE, dataSource)
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, schemaAction)
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, new CamelCaseToUnderscoresNamingStrategy())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, new SpringImplicitNamingStrategy())
+                // the entity listeners of the current entities are Spring beans
+                .applySetting(AvailableSettings.JPA_CALLBACKS_ENABLED, false)
+                .build();
+        MetadataSources sources = new MetadataSources(registry);
+        for (Class<?> entity : entities) {
+            sources.addAnnotatedClass(entity);
+        }
+        return sources.buildMetadata().buildSessionFactory();
+    }
+}
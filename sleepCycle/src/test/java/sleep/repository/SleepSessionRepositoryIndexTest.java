@@ -0,0 +1,218 @@
+package sleep.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks against an embedded PostgreSQL with the migrated schema that the queries of
+ * {@link SleepSessionRepository} are answered by an index scan and return the expected rows.
+ */
+class SleepSessionRepositoryIndexTest {
+
+    private static final Pattern NAMED_PARAMETER = Pattern.compile("(?<!:):(\\w+)");
+
+    private static final Map<String, Object> PARAMETERS = Map.of(
+            "personId", 1,
+            "startDate", Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 0, 0)),
+            "endDate", Timestamp.valueOf(LocalDateTime.of(2024, 1, 31, 0, 0)),
+            "startTime", Timestamp.valueOf(LocalDateTime.of(2024, 1, 10, 22, 0)),
+            "id", 10,
+            "limit", 11);
+
+    private static EmbeddedPostgres postgres;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (username, password) VALUES ('user1', 'x'), ('user2', 'x')");
+            statement.execute("INSERT INTO sleep_person (name, user_id) SELECT username, id FROM users");
+            statement.execute("INSERT INTO sleep_session (person_id, date, start_time, end_time, duration, personal_evaluation) " +
+                    "SELECT p.id, d, d + INTERVAL '22 hours', d + INTERVAL '30 hours', 28800000, (i % 10) + 1 " +
+                    "FROM sleep_person p, generate_series(1, 500) i, LATERAL (SELECT TIMESTAMP '2023-01-01' + i * INTERVAL '1 day' AS d) days");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        postgres.close();
+    }
+
+    static Stream<Method> nativeQueries() {
+        return Arrays.stream(SleepSessionRepository.class.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(Query.class) && method.getAnnotation(Query.class).nativeQuery());
+    }
+
+    @ParameterizedTest
+    @MethodSource("nativeQueries")
+    void nativeQueryUsesIndex(Method method) throws Exception {
+        assertIndexScan(method.getAnnotation(Query.class).value());
+    }
+
+    @Test
+    void findByPersonUsesIndex() throws Exception {
+        assertIndexScan("SELECT * FROM sleep_session WHERE person_id = :personId OFFSET 0 ROWS FETCH FIRST :limit ROWS ONLY");
+        assertIndexScan("SELECT COUNT(id) FROM sleep_session WHERE person_id = :personId");
+    }
+
+    @Test
+    void findByDateBetweenAndPersonUsesIndex() throws Exception {
+        assertIndexScan("SELECT * FROM sleep_session WHERE date BETWEEN :startDate AND :endDate AND person_id = :personId " +
+                "ORDER BY start_time OFFSET 0 ROWS FETCH FIRST :limit ROWS ONLY");
+        assertIndexScan("SELECT COUNT(id) FROM sleep_session WHERE date BETWEEN :startDate AND :endDate AND person_id = :personId");
+    }
+
+    @Test
+    void streamByPersonIdUsesIndex() throws Exception {
+        assertIndexScan("SELECT * FROM sleep_session WHERE person_id = :personId ORDER BY start_time, id");
+    }
+
+    @Test
+    void uniqueIndexesExist() throws Exception {
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT indexname FROM pg_indexes WHERE indexdef LIKE 'CREATE UNIQUE INDEX%'")) {
+            List<String> indexes = new ArrayList<>();
+            while (resultSet.next()) {
+                indexes.add(resultSet.getString(1));
+            }
+            assertTrue(indexes.contains("ux_users_username"));
+            assertTrue(indexes.contains("ux_sleep_person_user_id"));
+        }
+    }
+
+    @Test
+    void unusedEvaluationIndexIsDropped() throws Exception {
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM pg_indexes WHERE indexname = 'idx_sleep_session_person_evaluation'")) {
+            resultSet.next();
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    void keysetPagesSkipSessionsWithoutStartTime() throws Exception {
+        String firstPage = queryOf("findFirstByDateBetweenAndPersonId");
+        String nextPage = queryOf("findNextByDateBetweenAndPersonId");
+        long withStartTime;
+        long withoutStartTime;
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            withStartTime = insertSession(statement, "TIMESTAMP '2025-06-01 22:00'");
+            withoutStartTime = insertSession(statement, "NULL");
+        }
+        Map<String, Object> parameters = new HashMap<>(PARAMETERS);
+        parameters.put("startDate", Timestamp.valueOf(LocalDateTime.of(2025, 6, 1, 0, 0)));
+        parameters.put("endDate", Timestamp.valueOf(LocalDateTime.of(2025, 6, 30, 0, 0)));
+        parameters.put("limit", 2);
+
+        // the session without start time would be the second row of the first page and its cursor
+        List<Long> ids = queryIds(firstPage, parameters);
+        assertEquals(List.of(withStartTime), ids);
+        assertFalse(ids.contains(withoutStartTime));
+
+        parameters.put("startTime", Timestamp.valueOf(LocalDateTime.of(2025, 6, 1, 22, 0)));
+        parameters.put("id", (int) withStartTime);
+        assertEquals(List.of(), queryIds(nextPage, parameters));
+    }
+
+    private static String queryOf(String methodName) {
+        return nativeQueries()
+                .filter(method -> method.getName().equals(methodName))
+                .findFirst().orElseThrow()
+                .getAnnotation(Query.class).value();
+    }
+
+    private static long insertSession(Statement statement, String startTime) throws Exception {
+        try (ResultSet resultSet = statement.executeQuery("INSERT INTO sleep_session (person_id, date, start_time, duration) " +
+                "SELECT id, DATE '2025-06-01', " + startTime + ", 28800000 FROM sleep_person ORDER BY id LIMIT 1 RETURNING id")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static List<Long> queryIds(String sql, Map<String, Object> parameters) throws Exception {
+        List<Object> values = new ArrayList<>();
+        String jdbcSql = bind(sql, parameters, values);
+        try (Connection connection = postgres.getPostgresDatabase().getConnection();
+             PreparedStatement statement = connection.prepareStatement(jdbcSql)) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setObject(i + 1, values.get(i));
+            }
+            List<Long> ids = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong("id"));
+                }
+            }
+            return ids;
+        }
+    }
+
+    private static void assertIndexScan(String sql) throws Exception {
+        List<Object> values = new ArrayList<>();
+        String plan = explain(bind(sql, PARAMETERS, values), values);
+        assertFalse(plan.contains("Seq Scan on sleep_session"), "Sequentieller Scan für " + sql + "\n" + plan);
+        assertTrue(plan.contains("Index"), "Kein Index Scan für " + sql + "\n" + plan);
+    }
+
+    private static String bind(String sql, Map<String, Object> parameters, List<Object> values) {
+        Matcher matcher = NAMED_PARAMETER.matcher(sql);
+        StringBuilder jdbcSql = new StringBuilder();
+        while (matcher.find()) {
+            assertTrue(parameters.containsKey(matcher.group(1)), "Unbekannter Parameter " + matcher.group(1));
+            values.add(parameters.get(matcher.group(1)));
+            matcher.appendReplacement(jdbcSql, "?");
+        }
+        matcher.appendTail(jdbcSql);
+        return jdbcSql.toString();
+    }
+
+    private static String explain(String sql, List<Object> values) throws Exception {
+        try (Connection connection = postgres.getPostgresDatabase().getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET enable_seqscan = off");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 0; i < values.size(); i++) {
+                    statement.setObject(i + 1, values.get(i));
+                }
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1)).append('\n');
+                    }
+                }
+                return plan.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package sleep.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdLimitTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final AimdLimit limit = new AimdLimit(4, 2, 6, Duration.ofMillis(100), 0.5);
+
+    @Test
+    void rejectsRequestsOverTheLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+        assertEquals(4, limit.getInFlight());
+    }
+
+    @Test
+    void fastRequestsRaiseTheLimitUpToTheMaximum() {
+        for (int round = 0; round < 3; round++) {
+            int requests = limit.getLimit();
+            for (int i = 0; i < requests; i++) {
+                assertTrue(limit.tryAcquire());
+            }
+            for (int i = 0; i < requests; i++) {
+                limit.release(0, 10 * MS, false);
+            }
+        }
+
+        assertEquals(6, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void fastRequestsAtLowUtilizationKeepTheLimit() {
+        assertTrue(limit.tryAcquire());
+        limit.release(0, 10 * MS, false);
+
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void slowOrFailedRequestsLowerTheLimitOncePerRoundTrip() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        limit.release(0, 200 * MS, false);
+        assertEquals(2, limit.getLimit());
+
+        // started before the decrease
+        limit.release(MS, 300 * MS, false);
+        limit.release(MS, 10 * MS, true);
+        assertEquals(2, limit.getLimit());
+
+        assertTrue(limit.tryAcquire());
+        limit.release(400 * MS, 410 * MS, true);
+        assertEquals(2, limit.getLimit(), "Minimum unterschritten");
+    }
+}
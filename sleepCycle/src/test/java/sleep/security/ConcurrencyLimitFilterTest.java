@@ -0,0 +1,105 @@
+package sleep.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(meterRegistry,
+            limit(), limit(), limit(), 3);
+
+    @Test
+    void requestsAreGroupedByPath() {
+        assertEquals(ConcurrencyLimitFilter.Group.API, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/api/session/overview")));
+        assertEquals(ConcurrencyLimitFilter.Group.API, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("PUT", "/api/person/1/update")));
+        assertEquals(ConcurrencyLimitFilter.Group.AUTH, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("POST", "/api/auth/login")));
+        assertEquals(ConcurrencyLimitFilter.Group.PAGES, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/personalOverview")));
+        assertEquals(ConcurrencyLimitFilter.Group.PAGES, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/")));
+        assertNull(ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/css/style.css")));
+        assertNull(ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/actuator/metrics")));
+        assertTrue(ConcurrencyLimitFilter.isLongRunning(new MockHttpServletRequest("GET", "/api/session/export")));
+        assertTrue(ConcurrencyLimitFilter.isLongRunning(new MockHttpServletRequest("POST", "/api/session/import")));
+        assertFalse(ConcurrencyLimitFilter.isLongRunning(new MockHttpServletRequest("GET", "/api/session/getByDate")));
+    }
+
+    @Test
+    void requestOverTheLimitIsRejectedRightAway() throws Exception {
+        MockHttpServletResponse rejectedResponse = new MockHttpServletResponse();
+        MockHttpServletResponse otherGroupResponse = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/session/overview"), new MockHttpServletResponse(), (req, res) -> {
+            // the limit of the API is 1 and taken by this request
+            filter.doFilter(new MockHttpServletRequest("GET", "/api/session/getByDate"), rejectedResponse, new MockFilterChain());
+            filter.doFilter(new MockHttpServletRequest("GET", "/profile"), otherGroupResponse, new MockFilterChain());
+        });
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejectedResponse.getStatus());
+        assertEquals("3", rejectedResponse.getHeader("Retry-After"));
+        assertEquals(HttpServletResponse.SC_OK, otherGroupResponse.getStatus());
+        assertEquals(1, meterRegistry.get("http.concurrency.rejected").tag("group", "api").counter().count());
+        assertEquals(0, meterRegistry.get("http.concurrency.rejected").tag("group", "pages").counter().count());
+        assertEquals(0, meterRegistry.get("http.concurrency.in-flight").tag("group", "api").gauge().value());
+    }
+
+    @Test
+    void failedRequestLowersTheLimit() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(meterRegistry,
+                new AimdLimit(10, 1, 10, Duration.ofSeconds(10), 0.5), limit(), limit(), 1);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/session/overview"), new MockHttpServletResponse(),
+                (req, res) -> ((HttpServletResponse) res).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+
+        assertEquals(5, meterRegistry.get("http.concurrency.limit").tag("group", "api").gauge().value());
+    }
+
+    @Test
+    void slowExportDoesNotLowerTheLimit() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(meterRegistry,
+                new AimdLimit(10, 1, 10, Duration.ofMillis(1), 0.5), limit(), limit(), 1);
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/session/export"), new MockHttpServletResponse(),
+                (req, res) -> sleep());
+
+        assertEquals(10, meterRegistry.get("http.concurrency.limit").tag("group", "api").gauge().value());
+        assertEquals(0, meterRegistry.get("http.concurrency.in-flight").tag("group", "api").gauge().value());
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/session/getByDate"), new MockHttpServletResponse(),
+                (req, res) -> sleep());
+
+        assertEquals(5, meterRegistry.get("http.concurrency.limit").tag("group", "api").gauge().value());
+    }
+
+    @Test
+    void staticResourcesAreNotLimited() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/css/style.css"), new MockHttpServletResponse(), (req, res) ->
+                filter.doFilter(new MockHttpServletRequest("GET", "/css/other.css"), response, new MockFilterChain()));
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static AimdLimit limit() {
+        return new AimdLimit(1, 1, 1, Duration.ofSeconds(10), 0.5);
+    }
+}
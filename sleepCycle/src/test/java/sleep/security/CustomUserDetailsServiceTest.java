@@ -0,0 +1,89 @@
+package sleep.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import sleep.models.Role;
+import sleep.models.SleepPerson;
+import sleep.models.User;
+import sleep.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomUserDetailsServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private MeterRegistry meterRegistry;
+    private UserDetailsCache userDetailsCache;
+    private CustomUserDetailsService userDetailsService;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsCache = new UserDetailsCache(meterRegistry, 100, Duration.ofMinutes(5));
+        userDetailsService = new CustomUserDetailsService(userRepository, userDetailsCache);
+
+        Role role = new Role();
+        role.setName("USER");
+        SleepPerson person = new SleepPerson();
+        person.setId(3);
+        testUser = new User();
+        testUser.setId(2);
+        testUser.setUsername("testUser");
+        testUser.setPassword("hash");
+        testUser.setRoles(List.of(role));
+        testUser.setPerson(person);
+    }
+
+    @Test
+    void loadUserByUsernameQueriesDatabaseOnlyOnce() {
+        when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(testUser));
+
+        SleepUserDetails first = userDetailsService.loadUserByUsername("testUser");
+        first.eraseCredentials();
+        SleepUserDetails second = userDetailsService.loadUserByUsername("testUser");
+
+        verify(userRepository, times(1)).findByUsername("testUser");
+        assertEquals("hash", second.getPassword());
+        assertEquals(2, second.getUserId());
+        assertEquals(3, second.getPersonId());
+        assertEquals("USER", second.getAuthorities().iterator().next().getAuthority());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "userDetails").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "userDetails").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void evictedUserIsLoadedAgain() {
+        when(userRepository.findByUsername("testUser")).thenReturn(Optional.of(testUser));
+
+        userDetailsService.loadUserByUsername("testUser");
+        userDetailsCache.evict("testUser");
+        userDetailsService.loadUserByUsername("testUser");
+
+        verify(userRepository, times(2)).findByUsername("testUser");
+    }
+
+    @Test
+    void unknownUserIsNotCached() {
+        when(userRepository.findByUsername("unknown")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("unknown"));
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("unknown"));
+
+        verify(userRepository, times(2)).findByUsername("unknown");
+    }
+}
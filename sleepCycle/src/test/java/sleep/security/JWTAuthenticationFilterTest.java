@@ -0,0 +1,150 @@
+package sleep.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JWTAuthenticationFilterTest {
+
+    @Mock
+    private JwtGenerator jwtGenerator;
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    @Mock
+    private TokenRevocationStore tokenRevocationStore;
+
+    @InjectMocks
+    private JWTAuthenticationFilter filter;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void userIsTakenFromTheClaims() throws Exception {
+        AuthenticatedUser tokenUser = new AuthenticatedUser("testUser", 2, 3, List.of("USER"));
+        when(jwtGenerator.getVerifiedToken("headerToken")).thenReturn(new VerifiedToken("jti", "testUser", new Date(), null, tokenUser));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer headerToken");
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(tokenUser, request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE));
+        assertEquals("USER", SecurityContextHolder.getContext().getAuthentication().getAuthorities().iterator().next().getAuthority());
+        verify(jwtGenerator, times(1)).getVerifiedToken("headerToken");
+        verifyNoMoreInteractions(jwtGenerator);
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void cookieTokenWithoutClaimsIsVerifiedOnceAndPublished() throws Exception {
+        when(jwtGenerator.getVerifiedToken("cookieToken")).thenReturn(new VerifiedToken(null, "testUser", new Date(), null, null));
+        when(userDetailsService.loadUserByUsername("testUser"))
+                .thenReturn(new SleepUserDetails("testUser", "hash", List.of(new SimpleGrantedAuthority("USER")), 2, 3));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie("auth_token", "cookieToken"));
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        AuthenticatedUser user = (AuthenticatedUser) request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE);
+        assertEquals(new AuthenticatedUser("testUser", 2, 3, List.of("USER")), user);
+        assertEquals(user, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+        assertEquals("testUser", SecurityContextHolder.getContext().getAuthentication().getName());
+        verify(jwtGenerator, times(1)).getVerifiedToken("cookieToken");
+        verifyNoMoreInteractions(jwtGenerator);
+    }
+
+    @Test
+    void headerTokenTakesPrecedenceOverCookie() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer headerToken");
+        request.setCookies(new Cookie("auth_token", "cookieToken"));
+
+        assertEquals("headerToken", JWTAuthenticationFilter.getJWTFromRequest(request));
+    }
+
+    @Test
+    void revokedTokenContinuesUnauthenticated() throws Exception {
+        when(jwtGenerator.getVerifiedToken("revokedToken"))
+                .thenReturn(new VerifiedToken("jti", "testUser", new Date(), null, new AuthenticatedUser("testUser", 2, 3, List.of("USER"))));
+        when(tokenRevocationStore.isRevoked("jti")).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer revokedToken");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNotNull(filterChain.getRequest());
+        assertNull(request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void tokenOfRevokedUserContinuesUnauthenticated() throws Exception {
+        Date issuedAt = new Date();
+        when(jwtGenerator.getVerifiedToken("staleToken"))
+                .thenReturn(new VerifiedToken("jti", "testUser", issuedAt, null, new AuthenticatedUser("testUser", 2, 3, List.of("USER"))));
+        when(tokenRevocationStore.isRevoked(2, issuedAt)).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer staleToken");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNotNull(filterChain.getRequest());
+        assertNull(request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void invalidTokenContinuesUnauthenticated() throws Exception {
+        when(jwtGenerator.getVerifiedToken("expiredToken")).thenThrow(new ExpiredJwtException(null, null, "JWT ist abgelaufen"));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer expiredToken");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNotNull(filterChain.getRequest());
+        assertNull(request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void failingRevocationCheckContinuesUnauthenticated() throws Exception {
+        when(jwtGenerator.getVerifiedToken("headerToken"))
+                .thenReturn(new VerifiedToken("jti", "testUser", new Date(), null, new AuthenticatedUser("testUser", 2, 3, List.of("USER"))));
+        when(tokenRevocationStore.isRevoked("jti")).thenThrow(new DataAccessResourceFailureException("Keine Verbindung"));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer headerToken");
+        MockFilterChain filterChain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), filterChain);
+
+        assertNotNull(filterChain.getRequest());
+        assertNull(request.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
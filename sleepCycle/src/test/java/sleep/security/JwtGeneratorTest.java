@@ -0,0 +1,76 @@
+package sleep.security;
+
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtGeneratorTest {
+
+    private final JwtGenerator jwtGenerator = new JwtGenerator(
+            new JwtKeyStore(new byte[64], Duration.ofHours(24), Duration.ofHours(1), Clock.systemUTC()));
+
+    @Test
+    void cachedTokenIsStillReadable() {
+        String token = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("testUser", null));
+
+        assertEquals("testUser", jwtGenerator.getUsernameFromJWT(token));
+        assertEquals("testUser", jwtGenerator.getUsernameFromJWT(token));
+        assertTrue(jwtGenerator.validateToken(token));
+    }
+
+    @Test
+    void tokenCarriesIdsAndRolesOfTheUser() {
+        SleepUserDetails userDetails = new SleepUserDetails("testUser", "hash", List.of(new SimpleGrantedAuthority("USER")), 2, 3);
+        String token = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+
+        assertEquals(new AuthenticatedUser("testUser", 2, 3, List.of("USER")), jwtGenerator.getVerifiedToken(token).getUser());
+    }
+
+    @Test
+    void everyTokenHasItsOwnId() {
+        String first = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("testUser", null));
+        String second = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("testUser", null));
+
+        VerifiedToken verifiedFirst = jwtGenerator.getVerifiedToken(first);
+        assertNotNull(verifiedFirst.getId());
+        assertNotEquals(verifiedFirst.getId(), jwtGenerator.getVerifiedToken(second).getId());
+        assertTrue(verifiedFirst.getExpiration().after(new Date()));
+        assertFalse(verifiedFirst.getIssuedAt().after(new Date()));
+    }
+
+    @Test
+    void tokenWithoutIdsHasNoUser() {
+        String token = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("testUser", null));
+
+        assertNull(jwtGenerator.getVerifiedToken(token).getUser());
+    }
+
+    @Test
+    void tamperedTokenIsRejectedAfterTheOriginalWasCached() {
+        String token = jwtGenerator.generateToken(new UsernamePasswordAuthenticationToken("testUser", null));
+        jwtGenerator.getUsernameFromJWT(token);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertThrows(AuthenticationCredentialsNotFoundException.class, () -> jwtGenerator.validateToken(tampered));
+    }
+
+    @Test
+    void tokenOfOtherKeyIsRejected() {
+        String token = Jwts.builder()
+                .subject("testUser")
+                .expiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(Jwts.SIG.HS512.key().build())
+                .compact();
+
+        assertThrows(AuthenticationCredentialsNotFoundException.class, () -> jwtGenerator.validateToken(token));
+    }
+}
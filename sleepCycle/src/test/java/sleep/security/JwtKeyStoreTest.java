@@ -0,0 +1,92 @@
+package sleep.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyStoreTest {
+
+    private static final Duration ROTATION_INTERVAL = Duration.ofHours(24);
+    private static final Duration OVERLAP = Duration.ofHours(1);
+    private static final Instant EPOCH_START = Instant.parse("2024-05-15T00:00:00Z");
+
+    private final byte[] secret = new byte[64];
+
+    private JwtKeyStore keyStoreAt(Instant instant) {
+        return new JwtKeyStore(secret, ROTATION_INTERVAL, OVERLAP, Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private String signedBy(JwtKeyStore keyStore) {
+        String keyId = keyStore.getSigningKeyId();
+        return Jwts.builder()
+                .subject("testUser")
+                .expiration(new Date(System.currentTimeMillis() + 60000))
+                .header().keyId(keyId).and()
+                .signWith(keyStore.getSigningKey(keyId))
+                .compact();
+    }
+
+    private String verifiedBy(JwtKeyStore keyStore, String token) {
+        return Jwts.parser().keyLocator(keyStore).build().parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Test
+    void nodesWithTheSameSecretAcceptEachOthersTokens() {
+        String token = signedBy(keyStoreAt(EPOCH_START.plusSeconds(60)));
+
+        assertEquals("testUser", verifiedBy(keyStoreAt(EPOCH_START.plusSeconds(120)), token));
+    }
+
+    @Test
+    void nodeWithOtherSecretRejectsToken() {
+        String token = signedBy(keyStoreAt(EPOCH_START));
+        byte[] otherSecret = Arrays.copyOf(secret, secret.length);
+        otherSecret[0] = 1;
+        JwtKeyStore otherKeyStore = new JwtKeyStore(otherSecret, ROTATION_INTERVAL, OVERLAP, Clock.fixed(EPOCH_START, ZoneOffset.UTC));
+
+        assertThrows(SignatureException.class, () -> verifiedBy(otherKeyStore, token));
+    }
+
+    @Test
+    void keyRotatesAndOldKeyIsAcceptedDuringOverlap() {
+        JwtKeyStore before = keyStoreAt(EPOCH_START.minusSeconds(60));
+        String token = signedBy(before);
+        JwtKeyStore after = keyStoreAt(EPOCH_START.plus(OVERLAP).minusSeconds(1));
+
+        assertNotEquals(before.getSigningKeyId(), after.getSigningKeyId());
+        assertEquals("testUser", verifiedBy(after, token));
+        assertThrows(SignatureException.class, () -> verifiedBy(keyStoreAt(EPOCH_START.plus(OVERLAP)), token));
+    }
+
+    @Test
+    void nextKeyIsAcceptedFromNodeWithClockAhead() {
+        String token = signedBy(keyStoreAt(EPOCH_START.plusSeconds(30)));
+
+        assertEquals("testUser", verifiedBy(keyStoreAt(EPOCH_START.minusSeconds(30)), token));
+    }
+
+    @Test
+    void tokenWithoutKidIsRejected() {
+        JwtKeyStore keyStore = keyStoreAt(EPOCH_START);
+        String token = Jwts.builder()
+                .subject("testUser")
+                .signWith(keyStore.getSigningKey(keyStore.getSigningKeyId()))
+                .compact();
+
+        assertThrows(SignatureException.class, () -> verifiedBy(keyStore, token));
+    }
+
+    @Test
+    void shortSecretIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new JwtKeyStore(new byte[16], ROTATION_INTERVAL, OVERLAP, Clock.systemUTC()));
+    }
+}
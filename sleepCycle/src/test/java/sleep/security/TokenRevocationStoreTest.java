@@ -0,0 +1,143 @@
+package sleep.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sleep.models.RevokedToken;
+import sleep.models.RevokedUser;
+import sleep.repository.RevokedTokenRepository;
+import sleep.repository.RevokedUserRepository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationStoreTest {
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Mock
+    private RevokedUserRepository revokedUserRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TokenRevocationStore store;
+
+    private final Date expiresAt = new Date(System.currentTimeMillis() + 60000);
+
+    @BeforeEach
+    void setUp() {
+        store = new TokenRevocationStore(revokedTokenRepository, revokedUserRepository, meterRegistry, 1000);
+    }
+
+    @Test
+    void tokensNotInTheFilterSkipTheDatabase() {
+        when(revokedTokenRepository.findActiveJtis(any())).thenReturn(List.of("revoked"));
+        store.refresh();
+
+        assertFalse(store.isRevoked("other"));
+        verify(revokedTokenRepository, never()).existsById(anyString());
+        assertEquals(1, meterRegistry.get("token.revocation.checks").tag("result", "filtered").counter().count());
+    }
+
+    @Test
+    void tokensInTheFilterAreConfirmedByTheDatabase() {
+        when(revokedTokenRepository.findActiveJtis(any())).thenReturn(List.of("revoked"));
+        when(revokedTokenRepository.existsById("revoked")).thenReturn(true);
+        store.refresh();
+
+        assertTrue(store.isRevoked("revoked"));
+        assertEquals(1, meterRegistry.get("token.revocation.checks").tag("result", "revoked").counter().count());
+    }
+
+    @Test
+    void everyTokenIsLookedUpUntilTheFilterIsLoaded() {
+        assertFalse(store.isRevoked("other"));
+
+        verify(revokedTokenRepository).existsById("other");
+    }
+
+    @Test
+    void revokedTokenIsPersistedAndFilteredRightAway() {
+        store.refresh();
+
+        store.revoke("jti", expiresAt);
+
+        verify(revokedTokenRepository).save(new RevokedToken("jti", expiresAt));
+        when(revokedTokenRepository.existsById("jti")).thenReturn(true);
+        assertTrue(store.isRevoked("jti"));
+    }
+
+    @Test
+    void revocationOfThisNodeSurvivesARebuildThatMissedIt() {
+        store.refresh();
+        store.revoke("jti", expiresAt);
+
+        store.refresh();
+
+        when(revokedTokenRepository.existsById("jti")).thenReturn(true);
+        assertTrue(store.isRevoked("jti"));
+    }
+
+    @Test
+    void tokensWithoutJtiAreNeverRevoked() {
+        store.revoke(null, expiresAt);
+
+        assertFalse(store.isRevoked(null));
+        verifyNoInteractions(revokedTokenRepository);
+    }
+
+    @Test
+    void tokensOfRevokedUserIssuedBeforeTheRevocationAreRevoked() {
+        Date revokedAt = new Date(System.currentTimeMillis() - 10000);
+        when(revokedUserRepository.findActive(any())).thenReturn(List.of(new RevokedUser(2, revokedAt, expiresAt)));
+        store.refresh();
+
+        assertTrue(store.isRevoked(2, new Date(revokedAt.getTime() - 1000)));
+        assertTrue(store.isRevoked(2, revokedAt));
+        assertFalse(store.isRevoked(2, new Date(revokedAt.getTime() + 1000)));
+        assertFalse(store.isRevoked(3, revokedAt));
+        verify(revokedUserRepository, never()).findById(any());
+    }
+
+    @Test
+    void revokedUserIsPersistedAndCheckedRightAway() {
+        store.refresh();
+        Date issuedAt = new Date();
+
+        store.revokeUser(2);
+
+        verify(revokedUserRepository).save(argThat(revokedUser -> revokedUser.getUserId() == 2 && revokedUser.getExpiresAt().after(new Date())));
+        assertTrue(store.isRevoked(2, issuedAt));
+    }
+
+    @Test
+    void userRevocationOfThisNodeSurvivesARebuildThatMissedIt() {
+        store.refresh();
+        Date issuedAt = new Date();
+        store.revokeUser(2);
+
+        store.refresh();
+
+        assertTrue(store.isRevoked(2, issuedAt));
+    }
+
+    @Test
+    void revokedUsersAreLookedUpUntilTheyAreLoaded() {
+        Date revokedAt = new Date();
+        when(revokedUserRepository.findById(2)).thenReturn(Optional.of(new RevokedUser(2, revokedAt, expiresAt)));
+
+        assertTrue(store.isRevoked(2, revokedAt));
+    }
+}
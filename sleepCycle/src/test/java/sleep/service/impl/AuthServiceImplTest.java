@@ -12,10 +12,20 @@ import sleep.models.Role;
 import sleep.models.User;
 import sleep.repository.RoleRepository;
 import sleep.repository.UserRepository;
+import sleep.security.TokenRevocationStore;
+import sleep.security.UserDetailsCache;
+import sleep.service.RefreshTokenService;
 import sleep.service.SleepPersonService;
 
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,6 +44,15 @@ class AuthServiceImplTest {
     @Mock
     private SleepPersonService sleepPersonService;
 
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
+    @Mock
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
     @InjectMocks
     private AuthServiceImpl authService;
 
@@ -75,4 +94,34 @@ class AuthServiceImplTest {
 
         verify(roleRepository).findByName("USER");
     }
+
+    @Test
+    void changeRolesRevokesTheTokensOfTheUser() {
+        User user = new User();
+        user.setId(1);
+        user.setUsername("testUser");
+        Role adminRole = new Role();
+        adminRole.setName("ADMIN");
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+        when(roleRepository.findByName("ADMIN")).thenReturn(Optional.of(adminRole));
+
+        authService.changeRoles(1, List.of("ADMIN"));
+
+        assertEquals(List.of(adminRole), user.getRoles());
+        verify(userDetailsCache).evict("testUser");
+        verify(refreshTokenService).revokeAllOfUser(1);
+        verify(tokenRevocationStore).revokeUser(1);
+    }
+
+    @Test
+    void changeRolesToUnknownRoleKeepsTheTokens() {
+        User user = new User();
+        user.setId(1);
+        when(userRepository.findById(1)).thenReturn(Optional.of(user));
+        when(roleRepository.findByName("UNKNOWN")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> authService.changeRoles(1, List.of("UNKNOWN")));
+
+        verify(tokenRevocationStore, never()).revokeUser(anyInt());
+    }
 }
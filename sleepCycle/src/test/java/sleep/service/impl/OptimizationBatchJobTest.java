@@ -0,0 +1,177 @@
+package sleep.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import sleep.models.SleepPerson;
+import sleep.repository.OptimizationResultRepository;
+import sleep.repository.SleepPersonRepository;
+import sleep.service.impl.OptimizationServiceImpl.OptimizationResponse;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OptimizationBatchJobTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private SleepPersonRepository personRepository;
+
+    @Mock
+    private OptimizationResultRepository resultRepository;
+
+    @Mock
+    private OptimizationServiceImpl optimizationService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OptimizationBatchJob batchJob;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(true);
+        batchJob = new OptimizationBatchJob(dataSource, personRepository, resultRepository, optimizationService,
+                transactionManager, meterRegistry, 2, 3);
+    }
+
+    @Test
+    void skipsTheRunWhenAnotherNodeHoldsTheLock() throws Exception {
+        when(resultSet.getBoolean(1)).thenReturn(false);
+
+        batchJob.run();
+
+        verify(personRepository, never()).idRange();
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_unlock(?)");
+        verify(connection).close();
+    }
+
+    @Test
+    void computesAllPersonsInPartitions() throws Exception {
+        List<Integer> ids = List.of(1, 2, 5, 10);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(personRepository.idRange()).thenReturn(idRange(1, 10, ids.size()));
+        when(personRepository.findNamesByIdBetween(anyInt(), anyInt())).thenAnswer(invocation -> {
+            int fromId = invocation.getArgument(0);
+            int toId = invocation.getArgument(1);
+            assertTrue(toId - fromId < 3, "Partition zu groß: " + fromId + " bis " + toId);
+            return ids.stream().filter(id -> id >= fromId && id <= toId).map(id -> personName(id, "Person " + id)).toList();
+        });
+        when(optimizationService.calculateOptimalDurationForOneCycle(any()))
+                .thenReturn(new OptimizationResponse(5400000L, "Nachricht", "Dauer", 5000000L, 5800000L));
+
+        batchJob.run();
+
+        for (int id : ids) {
+            verify(resultRepository).lockForRecompute(id);
+            verify(resultRepository).store(eq(id), eq(5400000L), eq(5000000L), eq(5800000L), eq("Nachricht"), eq("Dauer"), any());
+        }
+        verify(optimizationService).calculateOptimalDurationForOneCycle(argThat(person -> person.getId() == 5 && "Person 5".equals(person.getName())));
+        verify(transactionManager, times(ids.size())).commit(any());
+        verify(connection).prepareStatement("SELECT pg_advisory_unlock(?)");
+        verify(statement, atLeastOnce()).setLong(1, OptimizationBatchJob.LOCK_KEY);
+        assertEquals(4, meterRegistry.get("optimization.batch.persons").tag("result", "computed").counter().count());
+        assertEquals(1.0, meterRegistry.get("optimization.batch.progress").gauge().value());
+        assertEquals(1, meterRegistry.get("optimization.batch.run").timer().count());
+        assertTrue(meterRegistry.get("optimization.batch.throughput").gauge().value() > 0);
+    }
+
+    @Test
+    void failedPersonDoesNotStopTheBatch() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(personRepository.idRange()).thenReturn(idRange(1, 2, 2));
+        when(personRepository.findNamesByIdBetween(1, 2)).thenReturn(List.of(personName(1, "Eins"), personName(2, "Zwei")));
+        when(optimizationService.calculateOptimalDurationForOneCycle(any(SleepPerson.class))).thenAnswer(invocation -> {
+            SleepPerson person = invocation.getArgument(0);
+            if (person.getId() == 1) {
+                throw new IllegalStateException("Fehler");
+            }
+            return new OptimizationResponse(-1L, "Nachricht", "Dauer", null, null);
+        });
+
+        batchJob.run();
+
+        verify(resultRepository, never()).store(eq(1), any(), any(), any(), any(), any(), any());
+        verify(resultRepository).store(eq(2), eq(-1L), isNull(), isNull(), eq("Nachricht"), eq("Dauer"), any());
+        verify(transactionManager).rollback(any());
+        assertEquals(1, meterRegistry.get("optimization.batch.persons").tag("result", "failed").counter().count());
+        assertEquals(1, meterRegistry.get("optimization.batch.persons").tag("result", "computed").counter().count());
+    }
+
+    @Test
+    void runWithoutPersonsDoesNothing() {
+        when(personRepository.idRange()).thenReturn(idRange(null, null, 0));
+
+        batchJob.run();
+
+        verify(personRepository, never()).findNamesByIdBetween(anyInt(), anyInt());
+        assertEquals(1.0, meterRegistry.get("optimization.batch.progress").gauge().value());
+    }
+
+    private static SleepPersonRepository.IdRange idRange(Integer minId, Integer maxId, long personCount) {
+        return new SleepPersonRepository.IdRange() {
+            @Override
+            public Integer getMinId() {
+                return minId;
+            }
+
+            @Override
+            public Integer getMaxId() {
+                return maxId;
+            }
+
+            @Override
+            public Long getPersonCount() {
+                return personCount;
+            }
+        };
+    }
+
+    private static SleepPersonRepository.PersonName personName(int id, String name) {
+        return new SleepPersonRepository.PersonName() {
+            @Override
+            public Integer getId() {
+                return id;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package sleep.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import sleep.repository.OptimizationResultRepository;
+import sleep.service.impl.OptimizationServiceImpl.OptimizationResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class OptimizationCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final OptimizationResultRepository resultRepository = mock(OptimizationResultRepository.class);
+
+    private final OptimizationCache cache = new OptimizationCache(meterRegistry, resultRepository, 100, Duration.ofHours(1));
+
+    @Test
+    void concurrentMissesComputeOnce() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<OptimizationResponse> first = CompletableFuture.supplyAsync(() -> cache.get(1, personId -> {
+            computations.incrementAndGet();
+            computing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new OptimizationResponse(5400000L, "Nachricht", "Dauer", null, null);
+        }));
+        assertTrue(computing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<OptimizationResponse> second = CompletableFuture.supplyAsync(() -> cache.get(1, personId -> {
+            computations.incrementAndGet();
+            return new OptimizationResponse(1L, "Andere", "Andere", null, null);
+        }));
+        release.countDown();
+
+        assertEquals(5400000L, first.get(5, TimeUnit.SECONDS).getDuration());
+        assertEquals(5400000L, second.get(5, TimeUnit.SECONDS).getDuration());
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void hitsAndMissesArePublished() {
+        cache.get(1, personId -> new OptimizationResponse(1L, "Nachricht", "Dauer", null, null));
+        cache.get(1, personId -> new OptimizationResponse(1L, "Nachricht", "Dauer", null, null));
+
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "optimization").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "optimization").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void evictedResultIsComputedAgain() {
+        cache.get(1, personId -> new OptimizationResponse(1L, "Alt", "Alt", null, null));
+        cache.evict(1);
+
+        assertEquals("Neu", cache.get(1, personId -> new OptimizationResponse(2L, "Neu", "Neu", null, null)).getMessage());
+        verify(resultRepository).markStale(1);
+    }
+}
@@ -1,20 +1,33 @@
 package sleep.service.impl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import sleep.dto.DurationStatsDto;
+import sleep.models.OptimizationResult;
 import sleep.models.SleepPerson;
-import sleep.models.SleepSession;
+import sleep.repository.OptimizationResultRepository;
 import sleep.repository.SleepPersonRepository;
-import sleep.repository.SleepSessionRepository;
+import sleep.service.SleepStatsService;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,15 +37,24 @@ class OptimizationServiceImplTest {
     private SleepPersonRepository personRepository;
 
     @Mock
-    private SleepSessionRepository sessionRepository;
+    private SleepStatsService statsService;
+
+    @Mock
+    private OptimizationResultRepository resultRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OptimizationCache optimizationCache;
 
-    @InjectMocks
     private OptimizationServiceImpl optimizationService;
 
     private SleepPerson testPerson;
 
     @BeforeEach
     void setUp() {
+        optimizationCache = new OptimizationCache(new SimpleMeterRegistry(), resultRepository, 100, Duration.ofHours(1));
+        optimizationService = new OptimizationServiceImpl(personRepository, statsService, optimizationCache, resultRepository, transactionManager, Period.ofMonths(2));
         testPerson = new SleepPerson();
         testPerson.setId(1);
         testPerson.setName("Test User");
@@ -40,62 +62,82 @@ class OptimizationServiceImplTest {
 
     @Test
     void testGetOptimalDurationForOneCycleInsufficientSessions() {
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(new ArrayList<>());
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(0, 0, 0, 0, 0));
+        when(statsService.getDurationStats(1)).thenReturn(durationStats(4, 115200000, 4 * 28800000.0 * 28800000, 0, 20));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
         assertNotNull(response);
         assertEquals(-1, response.getDuration());
+        assertNull(response.getDurationLowerBound());
         assertEquals("Für die Berechnung wurden zu wenige Sessions erfasst!", response.getMessage());
         assertTrue(response.getDurationMessage().contains("zu weniger Sessions"));
     }
 
     @Test
-    void testGetOptimalDurationForOneCycleNullSessions() {
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(null);
-        when(sessionRepository.getAllSessions(1L)).thenReturn(null);
+    void testGetOptimalDurationForOneCycleSufficientSessions() {
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(5, 150000000, 5 * 30000000.0 * 30000000, 0, 20));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
         assertNotNull(response);
-        assertEquals(-1, response.getDuration());
-        assertEquals("Für die Berechnung wurden zu wenige Sessions erfasst!", response.getMessage());
-        assertTrue(response.getDurationMessage().contains("zu weniger Sessions"));
+        assertEquals(7500000, response.getDuration());
+        // equal durations don't vary, so the interval collapses to the cycle length
+        assertEquals(7500000, response.getDurationLowerBound());
+        assertEquals(7500000, response.getDurationUpperBound());
+        assertTrue(response.getMessage().contains("basiert zum größeren Teil auf eher besseren Sessions"));
+        assertTrue(response.getDurationMessage().contains("liegt im Normalbereich"));
+        verify(statsService, never()).getDurationStats(1);
     }
 
     @Test
-    void testGetOptimalDurationForOneCycleSufficientSessions() {
-        List<SleepSession> sessions = new ArrayList<>();
-        for (int i = 0; i < 5; i++) {
-            SleepSession session = new SleepSession();
-            session.setDuration(30000000);
-            session.setCycles(4);
-            session.setPersonalEvaluation(8);
-            sessions.add(session);
+    void testGetOptimalDurationForOneCycleConfidenceInterval() {
+        // durations of 7, 7.5, 8, 8.5 and 9 hours with 5 cycles each
+        double sumSq = 0;
+        for (long duration = 25200000; duration <= 32400000; duration += 1800000) {
+            sumSq += (double) duration * duration;
         }
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(5, 144000000, sumSq, 0, 25));
 
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(sessions);
+        OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
+
+        // standard deviation of 2846050 ms, standard error 1272792 ms, per cycle 254558 ms, t(4) = 2.776
+        assertEquals(5760000, response.getDuration());
+        assertEquals(5760000 - 706654, response.getDurationLowerBound());
+        assertEquals(5760000 + 706654, response.getDurationUpperBound());
+    }
+
+    @Test
+    void testGetOptimalDurationForOneCycleConfidenceIntervalAccountsForTheCycles() {
+        // 6, 7.5 and 9 hours with 4, 5 and 6 cycles are all exactly 90 minutes per cycle
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(
+                new long[]{21600000, 27000000, 32400000, 27000000, 21600000}, new int[]{4, 5, 6, 5, 4}));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
-        assertNotNull(response);
-        assertTrue(response.getDuration() > 0);
-        assertTrue(response.getMessage().contains("basiert zum größeren Teil auf eher besseren Sessions"));
-        assertTrue(response.getDurationMessage().contains("liegt im Normalbereich"));
+        assertEquals(5400000, response.getDuration());
+        assertEquals(5400000, response.getDurationLowerBound());
+        assertEquals(5400000, response.getDurationUpperBound());
     }
 
     @Test
-    void testGetOptimalDurationForOneCycleBadSessionsMajority() {
-        List<SleepSession> sessions = new ArrayList<>();
-        for (int i = 0; i < 5; i++) {
-            SleepSession session = new SleepSession();
-            session.setDuration(20000000);
-            session.setCycles(5);
-            session.setPersonalEvaluation(i < 3 ? 4 : 8);
-            sessions.add(session);
-        }
+    void testGetOptimalDurationForOneCycleConfidenceIntervalWithVaryingCycles() {
+        // 8 hours each with 4 to 6 cycles: the duration doesn't vary, the cycle length does
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(
+                new long[]{28800000, 28800000, 28800000, 28800000, 28800000}, new int[]{4, 5, 6, 5, 5}));
+
+        OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(sessions);
+        // cycle length 5760000 ms, residuals 5760000 * (1, 0, -1, 0, 0) ms, variance 1.65888E13,
+        // standard error sqrt(1.65888E13 / 5) / 5 = 364294 ms, t(4) = 2.776
+        assertEquals(5760000, response.getDuration());
+        assertEquals(5760000 - 1011281, response.getDurationLowerBound());
+        assertEquals(5760000 + 1011281, response.getDurationUpperBound());
+    }
+
+    @Test
+    void testGetOptimalDurationForOneCycleBadSessionsMajority() {
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(5, 100000000, 5 * 20000000.0 * 20000000, 3, 25));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
@@ -107,45 +149,95 @@ class OptimizationServiceImplTest {
 
     @Test
     void testGetOptimalDurationForOneCycleUsesFallbackSessions() {
-        List<SleepSession> fallbackSessions = new ArrayList<>();
-        for (int i = 0; i < 5; i++) {
-            SleepSession session = new SleepSession();
-            session.setDuration(35000000);
-            session.setCycles(5);
-            session.setPersonalEvaluation(7);
-            fallbackSessions.add(session);
-        }
-
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(null);
-        when(sessionRepository.getAllSessions(1L)).thenReturn(fallbackSessions);
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(2, 70000000, 2 * 35000000.0 * 35000000, 0, 10));
+        when(statsService.getDurationStats(1)).thenReturn(durationStats(5, 175000000, 5 * 35000000.0 * 35000000, 0, 25));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
         assertNotNull(response);
-        assertTrue(response.getDuration() > 0);
+        assertEquals(7000000, response.getDuration());
         assertTrue(response.getMessage().contains("basiert zum größeren Teil auf eher besseren Sessions"));
         assertTrue(response.getDurationMessage().contains("liegt über dem Normalbereich"));
     }
 
     @Test
-    void testGetOptimalDurationForOneCycleUsesFallbackSessions2() {
-        List<SleepSession> fallbackSessions = new ArrayList<>();
-        int duration = 10000000;
-        for (int i = 0; i < 5; i++) {
-            SleepSession session = new SleepSession();
-            duration += 5000000;
-            session.setDuration(duration);
-            session.setPersonalEvaluation(7);
-            fallbackSessions.add(session);
-        }
+    void testGetOptimalDurationForOneCycleUsesConfiguredWindow() {
+        optimizationService = new OptimizationServiceImpl(personRepository, statsService, optimizationCache, resultRepository, transactionManager, Period.ofDays(14));
+        Date since = Date.from(LocalDate.now().minusDays(14).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        when(statsService.getDurationStatsSince(1, since)).thenReturn(durationStats(5, 150000000, 5 * 30000000.0 * 30000000, 0, 20));
+
+        OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
+
+        assertEquals(7500000, response.getDuration());
+        verify(statsService, never()).getDurationStats(1);
+    }
+
+    @Test
+    void testGetOptimalDurationForOneCycleIsCachedUntilEvicted() {
+        when(statsService.getDurationStatsSince(eq(1), any())).thenReturn(durationStats(0, 0, 0, 0, 0));
+        when(statsService.getDurationStats(1)).thenReturn(durationStats(4, 115200000, 4 * 28800000.0 * 28800000, 0, 20));
+
+        OptimizationServiceImpl.OptimizationResponse first = optimizationService.getOptimalDurationForOneCycle(testPerson);
+        first.setDuration(42L);
+        OptimizationServiceImpl.OptimizationResponse second = optimizationService.getOptimalDurationForOneCycle(testPerson);
+
+        assertEquals(-1, second.getDuration());
+        verify(statsService, times(1)).getDurationStats(1);
+
+        optimizationCache.evict(1);
+        optimizationService.getOptimalDurationForOneCycle(testPerson);
+
+        verify(statsService, times(2)).getDurationStats(1);
+    }
 
-        when(sessionRepository.sessionsOfLastTwoMonths(1L)).thenReturn(null);
-        when(sessionRepository.getAllSessions(1L)).thenReturn(fallbackSessions);
+    @Test
+    void testGetOptimalDurationForOneCycleReadsPrecomputedResult() {
+        Date today = Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+        OptimizationResult result = new OptimizationResult(1, 5400000L, 5000000L, 5800000L, "Nachricht", "Dauer", new Date(), false);
+        when(resultRepository.findFresh(1, today)).thenReturn(Optional.of(result));
 
         OptimizationServiceImpl.OptimizationResponse response = optimizationService.getOptimalDurationForOneCycle(testPerson);
 
-        assertNotNull(response);
-        assertTrue(response.getDuration() > 0);
-        assertTrue(response.getMessage().contains("basiert zum größeren Teil auf eher besseren Sessions"));
+        assertEquals(5400000L, response.getDuration());
+        assertEquals(5000000L, response.getDurationLowerBound());
+        assertEquals(5800000L, response.getDurationUpperBound());
+        assertEquals("Nachricht", response.getMessage());
+        verify(statsService, never()).getDurationStatsSince(anyInt(), any());
+    }
+
+    @Test
+    void tQuantileFallsBackToTheNormalDistribution() {
+        assertEquals(12.706, OptimizationServiceImpl.tQuantile(1));
+        assertEquals(2.776, OptimizationServiceImpl.tQuantile(4));
+        assertEquals(2.042, OptimizationServiceImpl.tQuantile(30));
+        assertEquals(1.96, OptimizationServiceImpl.tQuantile(31));
+    }
+
+    // sums of sessions that all have the same number of cycles
+    private static DurationStatsDto durationStats(long sessionCount, long sumDuration, double sumDurationSq, long badSessions, long sumCycles) {
+        DurationStatsDto stats = new DurationStatsDto();
+        stats.setSessionCount(sessionCount);
+        stats.setSumDuration(sumDuration);
+        stats.setSumDurationSq(sumDurationSq);
+        stats.setBadSessions(badSessions);
+        stats.setSumCycles(sumCycles);
+        if (sessionCount > 0) {
+            stats.setSumCyclesSq(sumCycles * sumCycles / sessionCount);
+            stats.setSumDurationCycles(sumDuration * sumCycles / sessionCount);
+        }
+        return stats;
+    }
+
+    private static DurationStatsDto durationStats(long[] durations, int[] cycles) {
+        DurationStatsDto stats = new DurationStatsDto();
+        stats.setSessionCount(durations.length);
+        for (int i = 0; i < durations.length; i++) {
+            stats.setSumDuration(stats.getSumDuration() + durations[i]);
+            stats.setSumDurationSq(stats.getSumDurationSq() + (double) durations[i] * durations[i]);
+            stats.setSumCycles(stats.getSumCycles() + cycles[i]);
+            stats.setSumCyclesSq(stats.getSumCyclesSq() + (long) cycles[i] * cycles[i]);
+            stats.setSumDurationCycles(stats.getSumDurationCycles() + durations[i] * cycles[i]);
+        }
+        return stats;
     }
 }
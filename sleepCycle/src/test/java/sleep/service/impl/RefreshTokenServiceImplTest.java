@@ -0,0 +1,142 @@
+package sleep.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sleep.dto.RotatedRefreshToken;
+import sleep.exceptions.InvalidRefreshTokenException;
+import sleep.models.RefreshToken;
+import sleep.models.User;
+import sleep.repository.RefreshTokenRepository;
+import sleep.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceImplTest {
+
+    @Mock
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private RefreshTokenServiceImpl refreshTokenService;
+
+    private User testUser;
+
+    private RefreshToken storedToken;
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenService = new RefreshTokenServiceImpl(refreshTokenRepository, userRepository, Duration.ofDays(14));
+
+        testUser = new User();
+        testUser.setId(3);
+        testUser.setUsername("testUser");
+
+        storedToken = new RefreshToken();
+        storedToken.setUser(testUser);
+        storedToken.setFamily(UUID.randomUUID());
+        storedToken.setTokenHash(RefreshTokenServiceImpl.hash("oldToken"));
+        storedToken.setExpiresAt(new Date(System.currentTimeMillis() + Duration.ofDays(1).toMillis()));
+    }
+
+    @Test
+    void createRefreshTokenStoresOnlyTheHash() {
+        when(userRepository.getReferenceById(3)).thenReturn(testUser);
+
+        String refreshToken = refreshTokenService.createRefreshToken(3);
+
+        verify(refreshTokenRepository).deleteExpiredOfUser(eq(3), any(Date.class));
+        ArgumentCaptor<RefreshToken> tokenCaptor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(tokenCaptor.capture());
+        RefreshToken saved = tokenCaptor.getValue();
+
+        assertEquals(RefreshTokenServiceImpl.hash(refreshToken), saved.getTokenHash());
+        assertNotEquals(refreshToken, saved.getTokenHash());
+        assertEquals(testUser, saved.getUser());
+        assertNotNull(saved.getFamily());
+        assertFalse(saved.isRevoked());
+        assertTrue(saved.getExpiresAt().getTime() > System.currentTimeMillis() + Duration.ofDays(13).toMillis());
+    }
+
+    @Test
+    void rotateIssuesNewTokenOfTheSameFamily() {
+        when(refreshTokenRepository.findByTokenHash(storedToken.getTokenHash())).thenReturn(Optional.of(storedToken));
+
+        RotatedRefreshToken rotated = refreshTokenService.rotate("oldToken");
+
+        assertEquals("testUser", rotated.getUsername());
+        assertNotEquals("oldToken", rotated.getRefreshToken());
+        assertTrue(storedToken.isRevoked());
+        assertNotNull(storedToken.getRotatedAt());
+
+        ArgumentCaptor<RefreshToken> tokenCaptor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(tokenCaptor.capture());
+        assertEquals(storedToken.getFamily(), tokenCaptor.getValue().getFamily());
+        assertEquals(RefreshTokenServiceImpl.hash(rotated.getRefreshToken()), tokenCaptor.getValue().getTokenHash());
+    }
+
+    @Test
+    void rotateUnknownToken() {
+        when(refreshTokenRepository.findByTokenHash(anyString())).thenReturn(Optional.empty());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate("unknown"));
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void rotateExpiredToken() {
+        storedToken.setExpiresAt(new Date(System.currentTimeMillis() - 1000));
+        when(refreshTokenRepository.findByTokenHash(storedToken.getTokenHash())).thenReturn(Optional.of(storedToken));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate("oldToken"));
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void reuseOfRotatedTokenRevokesTheFamily() {
+        storedToken.setRevoked(true);
+        storedToken.setRotatedAt(new Date(System.currentTimeMillis() - Duration.ofMinutes(5).toMillis()));
+        when(refreshTokenRepository.findByTokenHash(storedToken.getTokenHash())).thenReturn(Optional.of(storedToken));
+
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate("oldToken"));
+        verify(refreshTokenRepository).revokeFamily(storedToken.getFamily());
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void concurrentRotationWithinGracePeriodIsAccepted() {
+        storedToken.setRevoked(true);
+        storedToken.setRotatedAt(new Date());
+        when(refreshTokenRepository.findByTokenHash(storedToken.getTokenHash())).thenReturn(Optional.of(storedToken));
+        when(refreshTokenRepository.existsByFamilyAndRevokedFalse(storedToken.getFamily())).thenReturn(true);
+
+        RotatedRefreshToken rotated = refreshTokenService.rotate("oldToken");
+
+        assertEquals("testUser", rotated.getUsername());
+        verify(refreshTokenRepository, never()).revokeFamily(any());
+    }
+
+    @Test
+    void revokeRevokesTheFamily() {
+        when(refreshTokenRepository.findByTokenHash(storedToken.getTokenHash())).thenReturn(Optional.of(storedToken));
+
+        refreshTokenService.revoke("oldToken");
+
+        verify(refreshTokenRepository).revokeFamily(storedToken.getFamily());
+    }
+}
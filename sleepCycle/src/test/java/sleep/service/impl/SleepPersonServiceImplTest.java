@@ -9,7 +9,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import sleep.dto.SleepPersonDto;
+import sleep.dto.SleepSessionCursor;
 import sleep.dto.SleepSessionResponse;
+import sleep.exceptions.InvalidCursorException;
 import sleep.exceptions.SleepPersonNotFoundException;
 import sleep.models.SleepPerson;
 import sleep.models.SleepSession;
@@ -17,6 +19,10 @@ import sleep.models.User;
 import sleep.repository.SleepPersonRepository;
 import sleep.repository.SleepSessionRepository;
 import sleep.repository.UserRepository;
+import sleep.security.TokenRevocationStore;
+import sleep.security.UserDetailsCache;
+import sleep.service.RefreshTokenService;
+import sleep.service.SleepStatsService;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -39,6 +45,18 @@ class SleepPersonServiceImplTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private SleepStatsService statsService;
+
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
+    @Mock
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
     @InjectMocks
     private SleepPersonServiceImpl sleepPersonService;
 
@@ -104,7 +122,11 @@ class SleepPersonServiceImplTest {
 
         sleepPersonService.deleteSleepPerson(testPerson.getId());
 
+        verify(statsService, times(1)).deleteStatsOfPerson(1);
         verify(userRepository, times(1)).delete(testUser);
+        verify(userDetailsCache, times(1)).evict(testUser.getUsername());
+        verify(tokenRevocationStore, times(1)).revokeUser(testUser.getId());
+        verify(refreshTokenService, times(1)).revokeAllOfUser(testUser.getId());
     }
 
     @Test
@@ -178,4 +200,48 @@ class SleepPersonServiceImplTest {
         assertEquals(1, response.getTotalPages());
         assertTrue(response.isLast());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getSessionsByDateAndPersonIdAfterFirstPage() {
+        Date startDate = new Date();
+        Date endDate = new Date();
+        SleepSession secondSession = new SleepSession();
+        secondSession.setId(2);
+        secondSession.setStartTime(new Date(testSession.getStartTime().getTime() + 1000));
+
+        when(sessionRepository.findFirstByDateBetweenAndPersonId(startDate, endDate, 1, 2))
+                .thenReturn(List.of(testSession, secondSession));
+
+        SleepSessionResponse response = sleepPersonService.getSessionsByDateAndPersonIdAfter(startDate, endDate, 1, null, 1);
+
+        assertEquals(1, response.getContent().size());
+        assertFalse(response.isLast());
+        SleepSessionCursor cursor = SleepSessionCursor.decode(response.getNextCursor());
+        assertEquals(testSession.getStartTime(), cursor.getStartTime());
+        assertEquals(1, cursor.getId());
+        verify(sessionRepository, never()).findByDateBetweenAndPerson(any(), any(), any(), any());
+    }
+
+    @Test
+    void getSessionsByDateAndPersonIdAfterCursor() {
+        Date startDate = new Date();
+        Date endDate = new Date();
+        String cursor = new SleepSessionCursor(testSession.getStartTime(), 1).encode();
+
+        when(sessionRepository.findNextByDateBetweenAndPersonId(startDate, endDate, 1, testSession.getStartTime(), 1, SleepPersonServiceImpl.MAX_PAGE_SIZE + 1))
+                .thenReturn(List.of(testSession));
+
+        SleepSessionResponse response = sleepPersonService.getSessionsByDateAndPersonIdAfter(startDate, endDate, 1, cursor, 1000);
+
+        assertEquals(1, response.getContent().size());
+        assertEquals(SleepPersonServiceImpl.MAX_PAGE_SIZE, response.getPageSize());
+        assertTrue(response.isLast());
+        assertNull(response.getNextCursor());
+    }
+
+    @Test
+    void getSessionsByDateAndPersonIdAfterInvalidCursor() {
+        assertThrows(InvalidCursorException.class,
+                () -> sleepPersonService.getSessionsByDateAndPersonIdAfter(new Date(), new Date(), 1, "kein-cursor", 10));
+    }
+}
@@ -0,0 +1,87 @@
+package sleep.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sleep.dto.ExportFormat;
+import sleep.models.SleepPerson;
+import sleep.models.SleepSession;
+import sleep.repository.SleepSessionRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SleepSessionExportServiceImplTest {
+
+    @Mock
+    private SleepSessionRepository sessionRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private SleepSessionExportServiceImpl exportService;
+
+    private SleepSession testSession;
+    private SleepSession sessionWithoutValues;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new SleepSessionExportServiceImpl(sessionRepository, entityManager, new ObjectMapper());
+
+        SleepPerson testPerson = new SleepPerson();
+        testPerson.setId(1);
+
+        testSession = new SleepSession();
+        testSession.setId(4);
+        testSession.setPerson(testPerson);
+        testSession.setStartTime(new Date(1704146400000L));
+        testSession.setEndTime(new Date(1704175200000L));
+        testSession.setDate(new Date(1704067200000L));
+        testSession.setDuration(28800000);
+        testSession.setPersonalEvaluation(7);
+
+        sessionWithoutValues = new SleepSession();
+        sessionWithoutValues.setId(5);
+        sessionWithoutValues.setPerson(testPerson);
+    }
+
+    @Test
+    void exportSessionsAsCsv() throws Exception {
+        when(sessionRepository.streamByPersonId(1)).thenReturn(Stream.of(testSession, sessionWithoutValues));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        exportService.exportSessions(1, ExportFormat.CSV, outputStream);
+
+        assertEquals("id,startTime,endTime,duration,date,cycles,personalEvaluation\n" +
+                "4,2024-01-01T22:00:00Z,2024-01-02T06:00:00Z,28800000,2024-01-01T00:00:00Z,,7\n" +
+                "5,,,,,,\n", outputStream.toString(StandardCharsets.UTF_8));
+        verify(entityManager, times(1)).detach(testSession);
+        verify(entityManager, times(1)).detach(sessionWithoutValues);
+    }
+
+    @Test
+    void exportSessionsAsNdjson() throws Exception {
+        when(sessionRepository.streamByPersonId(1)).thenReturn(Stream.of(testSession, sessionWithoutValues));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        exportService.exportSessions(1, ExportFormat.NDJSON, outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(4, new ObjectMapper().readTree(lines[0]).get("id").asInt());
+        assertEquals(28800000, new ObjectMapper().readTree(lines[0]).get("duration").asInt());
+        assertEquals(5, new ObjectMapper().readTree(lines[1]).get("id").asInt());
+        verify(entityManager, times(2)).detach(any(SleepSession.class));
+    }
+}
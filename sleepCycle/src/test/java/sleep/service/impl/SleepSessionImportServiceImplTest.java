@@ -0,0 +1,158 @@
+package sleep.service.impl;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sleep.dto.SessionImportResponse;
+import sleep.dto.SleepSessionDto;
+import sleep.service.SleepSessionService;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SleepSessionImportServiceImplTest {
+
+    private static EmbeddedPostgres postgres;
+    private static DataSource dataSource;
+
+    private SleepSessionImportServiceImpl importService;
+
+    private final OptimizationCache optimizationCache = mock(OptimizationCache.class);
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+    private int personId;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        postgres = EmbeddedPostgres.start();
+        dataSource = postgres.getPostgresDatabase();
+        Flyway.configure().dataSource(dataSource).load().migrate();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        importService = new SleepSessionImportServiceImpl(dataSource, optimizationCache);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("TRUNCATE sleep_stats_bucket, sleep_session, sleep_person, users CASCADE");
+        jdbcTemplate.update("INSERT INTO users (username, password) VALUES ('test', 'x')");
+        personId = jdbcTemplate.queryForObject("INSERT INTO sleep_person (name, user_id) SELECT username, id FROM users RETURNING id", Integer.class);
+    }
+
+    @Test
+    void importSessionsSkipsDuplicatesAndInvalidRows() {
+        String csv = "id,startTime,endTime,duration,date,cycles,personalEvaluation\n" +
+                "1,2024-01-01T22:00:00Z,2024-01-02T06:00:00Z,,,,7\n" +
+                "2,2024-01-02T22:00:00Z,2024-01-03T05:00:00Z,1,,5,8\n" +
+                "3,2024-01-02T22:00:00Z,2024-01-03T05:00:00Z,,,,8\n" +
+                "4,2024-01-03T22:00:00Z,2024-01-03T21:00:00Z,,,,8\n" +
+                "5,kein Datum,2024-01-03T21:00:00Z,,,,8\n";
+
+        SessionImportResponse first = importCsv(csv);
+
+        assertEquals(5, first.getRows());
+        assertEquals(2, first.getImported());
+        assertEquals(1, first.getDuplicates());
+        assertEquals(2, first.getRejected());
+        assertEquals(2, first.getErrors().size());
+        assertTrue(first.getErrors().get(0).startsWith("Zeile 5:"));
+
+        Map<String, Object> session = jdbcTemplate.queryForMap("SELECT duration, cycles, person_id FROM sleep_session WHERE personal_evaluation = 8");
+        assertEquals(25200000, session.get("duration"));
+        assertEquals(5, session.get("cycles"));
+        assertEquals(personId, session.get("person_id"));
+        assertEquals(2L, jdbcTemplate.queryForObject("SELECT SUM(session_count) FROM sleep_stats_bucket WHERE granularity = 'MONTH'", Long.class));
+        assertEquals(54000000L, jdbcTemplate.queryForObject("SELECT SUM(sum_duration) FROM sleep_stats_bucket WHERE granularity = 'DAY'", Long.class));
+        // both sessions have 5 cycles, the one of 480 minutes estimated
+        assertEquals(50L, jdbcTemplate.queryForObject("SELECT SUM(sum_cycles_sq) FROM sleep_stats_bucket WHERE granularity = 'WEEK'", Long.class));
+        assertEquals(270000000L, jdbcTemplate.queryForObject("SELECT SUM(sum_duration_cycles) FROM sleep_stats_bucket WHERE granularity = 'WEEK'", Long.class));
+
+        verify(optimizationCache).evict(personId);
+
+        SessionImportResponse second = importCsv(csv);
+
+        assertEquals(0, second.getImported());
+        assertEquals(3, second.getDuplicates());
+        assertEquals(2L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sleep_session", Long.class));
+    }
+
+    @Test
+    void importedSessionsWithoutValuesAreNotCounted() {
+        String csv = "startTime,endTime,duration,personalEvaluation\n" +
+                "2024-01-01T22:00:00Z,2024-01-02T06:00:00Z,,7\n" +
+                "2024-01-02T22:00:00Z,2024-01-03T06:00:00Z,,\n";
+
+        assertEquals(2, importCsv(csv).getImported());
+
+        Map<String, Object> month = jdbcTemplate.queryForMap("SELECT session_count, duration_count, evaluated_count, sum_evaluation FROM sleep_stats_bucket WHERE granularity = 'MONTH'");
+        assertEquals(2, month.get("session_count"));
+        assertEquals(2, month.get("duration_count"));
+        assertEquals(1, month.get("evaluated_count"));
+        assertEquals(7L, month.get("sum_evaluation"));
+    }
+
+    @Test
+    void importSessionsWithoutRequiredColumns() {
+        assertThrows(IllegalArgumentException.class, () -> importCsv("id,duration\n1,3600\n"));
+        assertThrows(IllegalArgumentException.class, () -> importCsv(""));
+    }
+
+    @Test
+    void importedSessionsTakeTheirIdsFromWholeSequenceBlocks() {
+        StringBuilder csv = new StringBuilder("startTime,endTime\n");
+        for (int day = 1; day <= 120; day++) {
+            Instant start = Instant.parse("2024-01-01T22:00:00Z").plus(day, ChronoUnit.DAYS);
+            csv.append(start).append(',').append(start.plus(8, ChronoUnit.HOURS)).append('\n');
+        }
+        long before = jdbcTemplate.queryForObject("SELECT nextval('sleep_session_seq')", Long.class);
+
+        assertEquals(120, importCsv(csv.toString()).getImported());
+
+        long after = jdbcTemplate.queryForObject("SELECT nextval('sleep_session_seq')", Long.class);
+        assertEquals(4L * SleepSessionImportServiceImpl.ID_BLOCK_SIZE, after - before);
+        Map<String, Object> ids = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id, COUNT(DISTINCT id) AS count FROM sleep_session");
+        assertEquals(120L, ids.get("count"));
+        assertEquals(before + 1, ((Number) ids.get("min_id")).longValue());
+        assertEquals(before + 120, ((Number) ids.get("max_id")).longValue());
+    }
+
+    @Test
+    void parseRowCompletesDateAndDuration() {
+        Map<String, Integer> columns = SleepSessionImportServiceImpl.parseHeader("start_time,\"end_time\",Personal_Evaluation");
+
+        SleepSessionDto session = SleepSessionImportServiceImpl.parseRow("2024-01-01T22:00:00Z,2024-01-02T06:30:00Z,9".split(","), columns);
+
+        assertEquals(30600000, session.getDuration());
+        assertEquals(SleepSessionService.convertToDateWithTimeZone(new Date(1704146400000L)), session.getDate());
+        assertEquals(9, session.getPersonalEvaluation());
+    }
+
+    private SessionImportResponse importCsv(String csv) {
+        return transactionTemplate.execute(status -> {
+            try {
+                return importService.importSessions(personId, new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import sleep.dto.BulkSessionResponse;
+import sleep.dto.BulkSessionResult;
 import sleep.dto.SleepSessionDto;
 import sleep.exceptions.SleepPersonNotFoundException;
 import sleep.exceptions.SleepSessionNotFoundException;
@@ -15,13 +17,17 @@ import sleep.models.User;
 import sleep.repository.SleepPersonRepository;
 import sleep.repository.SleepSessionRepository;
 import sleep.repository.UserRepository;
+import sleep.service.SleepStatsService;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,6 +42,12 @@ class SleepSessionServiceImplTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private SleepStatsService statsService;
+
+    @Mock
+    private OptimizationCache optimizationCache;
+
     @InjectMocks
     private SleepSessionServiceImpl sleepSessionService;
 
@@ -79,6 +91,8 @@ class SleepSessionServiceImplTest {
         SleepSessionDto sessionDto = sleepSessionService.createSleepSession(testSessionDto);
         SleepSessionDto sessionDto1 = sleepSessionService.mapToDto(testSession);
         assertEquals(sessionDto1, sessionDto1);
+        verify(statsService, times(1)).addSession(any(SleepSession.class));
+        verify(optimizationCache, times(1)).evict(testPerson.getId());
     }
 
     @Test
@@ -95,7 +109,9 @@ class SleepSessionServiceImplTest {
 
         sleepSessionService.deleteSleepSession(testSession.getId());
 
+        verify(statsService, times(1)).removeSession(testSession);
         verify(sessionRepository, times(1)).deleteById((long) testSession.getId());
+        verify(optimizationCache, times(1)).evict(testPerson.getId());
     }
 
     @Test
@@ -124,6 +140,9 @@ class SleepSessionServiceImplTest {
 
         SleepSessionDto sessionDto = sleepSessionService.updateSleepSession(updateSessionDto, 0);
         assertEquals(sessionDto, updateSessionDto);
+        verify(statsService, times(1)).removeSession(argThat(previous -> previous.getDuration() == 70 && previous.getCycles() == 4));
+        verify(statsService, times(1)).addSession(testSession);
+        verify(optimizationCache, atLeastOnce()).evict(testPerson.getId());
     }
 
     @Test
@@ -146,4 +165,45 @@ class SleepSessionServiceImplTest {
         when(sessionRepository.findById(0L)).thenReturn(Optional.ofNullable(testSession));
         assertEquals(testSessionDto, sleepSessionService.getSleepSession(testPerson.getId()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void createSleepSessionsRejectsInvalidItems() {
+        testPerson.setId(1);
+        testSessionDto.setId(99);
+        testSessionDto.setEndTime(new Date(testSessionDto.getStartTime().getTime() + 3600000));
+        SleepSessionDto withoutEndTime = new SleepSessionDto();
+        withoutEndTime.setStartTime(new Date());
+        SleepSessionDto invalidEvaluation = new SleepSessionDto();
+        invalidEvaluation.setStartTime(testSessionDto.getStartTime());
+        invalidEvaluation.setEndTime(testSessionDto.getEndTime());
+        invalidEvaluation.setPersonalEvaluation(11);
+        when(personRepository.findById(1L)).thenReturn(Optional.of(testPerson));
+        when(sessionRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<SleepSession> sessions = invocation.getArgument(0);
+            sessions.forEach(session -> session.setId(7));
+            return sessions;
+        });
+
+        BulkSessionResponse response = sleepSessionService.createSleepSessions(List.of(withoutEndTime, testSessionDto, invalidEvaluation), 1);
+
+        assertEquals(1, response.getCreated());
+        assertEquals(2, response.getRejected());
+        assertEquals(BulkSessionResult.Status.REJECTED, response.getResults().get(0).getStatus());
+        assertEquals(BulkSessionResult.Status.CREATED, response.getResults().get(1).getStatus());
+        assertEquals(7, response.getResults().get(1).getId());
+        assertEquals(BulkSessionResult.Status.REJECTED, response.getResults().get(2).getStatus());
+        verify(sessionRepository, times(1)).saveAllAndFlush(argThat(sessions -> ((List<?>) sessions).size() == 1));
+        verify(statsService, times(1)).addSessions(anyList());
+        verify(personRepository, times(1)).findById(1L);
+        verify(optimizationCache, times(1)).evict(1);
+    }
+
+    @Test
+    void createSleepSessionsPersonNotFound() {
+        when(personRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(SleepPersonNotFoundException.class, () -> sleepSessionService.createSleepSessions(List.of(testSessionDto), 1));
+        verify(sessionRepository, never()).saveAllAndFlush(anyList());
+        verifyNoInteractions(optimizationCache);
+    }
+}
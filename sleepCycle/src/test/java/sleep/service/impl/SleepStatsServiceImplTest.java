@@ -0,0 +1,175 @@
+package sleep.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sleep.dto.DurationStatsDto;
+import sleep.dto.OverviewStatsDto;
+import sleep.models.SleepPerson;
+import sleep.models.SleepSession;
+import sleep.repository.SleepStatsBucketRepository;
+import sleep.repository.SleepStatsBucketRepository.DurationStats;
+import sleep.repository.SleepStatsBucketRepository.OverviewStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SleepStatsServiceImplTest {
+
+    @Mock
+    private SleepStatsBucketRepository bucketRepository;
+
+    @InjectMocks
+    private SleepStatsServiceImpl statsService;
+
+    private SleepPerson testPerson;
+    private SleepSession testSession;
+
+    @BeforeEach
+    void setUp() {
+        testPerson = new SleepPerson();
+        testPerson.setId(1);
+
+        // Wednesday, 2024-05-15 22:30
+        Date startTime = Date.from(LocalDateTime.of(2024, 5, 15, 22, 30).atZone(ZoneId.systemDefault()).toInstant());
+        testSession = new SleepSession();
+        testSession.setPerson(testPerson);
+        testSession.setStartTime(startTime);
+        testSession.setDuration(28800000);
+        testSession.setPersonalEvaluation(7);
+    }
+
+    @Test
+    void addSessionAppliesDeltaToAllBuckets() {
+        statsService.addSession(testSession);
+
+        // 480 minutes without entered cycles are estimated as 5 cycles
+        verify(bucketRepository, times(1)).applyDelta(1, LocalDate.of(2024, 5, 15), LocalDate.of(2024, 5, 13), LocalDate.of(2024, 5, 1),
+                1, 28800000L, 7L, 5L, 28800000.0 * 28800000, 25L, 144000000L, 0L, 1, 1);
+        verify(bucketRepository, never()).deleteEmptyBuckets(anyInt());
+    }
+
+    @Test
+    void removeSessionAppliesNegativeDeltaAndDeletesEmptyBuckets() {
+        testSession.setCycles(4);
+
+        statsService.removeSession(testSession);
+
+        verify(bucketRepository, times(1)).applyDelta(1, LocalDate.of(2024, 5, 15), LocalDate.of(2024, 5, 13), LocalDate.of(2024, 5, 1),
+                -1, -28800000L, -7L, -4L, -28800000.0 * 28800000, -16L, -115200000L, 0L, -1, -1);
+        verify(bucketRepository, times(1)).deleteEmptyBuckets(1);
+    }
+
+    @Test
+    void addSessionsRollsUpPersistedSessions() {
+        testSession.setId(4);
+        SleepSession otherSession = new SleepSession();
+        otherSession.setId(5);
+
+        statsService.addSessions(List.of(testSession, otherSession));
+        statsService.addSessions(List.of());
+
+        verify(bucketRepository, times(1)).addPersistedSessions(List.of(4, 5));
+    }
+
+    @Test
+    void badSessionIsCountedInTheBuckets() {
+        testSession.setPersonalEvaluation(3);
+        testSession.setCycles(5);
+
+        statsService.addSession(testSession);
+
+        verify(bucketRepository, times(1)).applyDelta(1, LocalDate.of(2024, 5, 15), LocalDate.of(2024, 5, 13), LocalDate.of(2024, 5, 1),
+                1, 28800000L, 3L, 5L, 28800000.0 * 28800000, 25L, 144000000L, 1L, 1, 1);
+    }
+
+    @Test
+    void sessionWithoutEvaluationIsNotCountedAsEvaluated() {
+        testSession.setPersonalEvaluation(null);
+        testSession.setCycles(5);
+
+        statsService.addSession(testSession);
+
+        verify(bucketRepository, times(1)).applyDelta(1, LocalDate.of(2024, 5, 15), LocalDate.of(2024, 5, 13), LocalDate.of(2024, 5, 1),
+                1, 28800000L, 0L, 5L, 28800000.0 * 28800000, 25L, 144000000L, 0L, 1, 0);
+    }
+
+    @Test
+    void sessionWithoutStartTimeIsIgnored() {
+        testSession.setStartTime(null);
+
+        statsService.removeSession(testSession);
+
+        verify(bucketRepository, never()).applyDelta(anyInt(), any(), any(), any(), anyInt(), anyLong(), anyLong(), anyLong(), anyDouble(), anyLong(), anyLong(), anyLong(), anyInt(), anyInt());
+        verify(bucketRepository, never()).deleteEmptyBuckets(anyInt());
+    }
+
+    @Test
+    void getOverviewStats() {
+        OverviewStats stats = mock(OverviewStats.class);
+        when(stats.getTotalSessions()).thenReturn(3L);
+        when(stats.getTotalDuration()).thenReturn(90000000L);
+        when(stats.getAvg7DaysDuration()).thenReturn(28800000.0);
+        when(stats.getAvgMonthDuration()).thenReturn(null);
+        when(stats.getAvgYearEvaluation()).thenReturn(7.5);
+        when(bucketRepository.overviewStatsByPersonId(eq(1), any(LocalDate.class), any(LocalDate.class), any(LocalDate.class))).thenReturn(stats);
+
+        OverviewStatsDto statsDto = statsService.getOverviewStats(1);
+
+        assertEquals(3, statsDto.getTotalSessions());
+        assertEquals(90000000L, statsDto.getTotalDuration());
+        assertEquals(28800000.0, statsDto.getAvg7DaysDuration());
+        assertNull(statsDto.getAvgMonthDuration());
+        assertEquals(7.5, statsDto.getAvgYearEvaluation());
+    }
+
+    @Test
+    void getDurationStatsSinceReadsTheDailyBucketsOfTheWindow() {
+        DurationStats stats = mock(DurationStats.class);
+        when(stats.getSessionCount()).thenReturn(2L);
+        when(stats.getSumDuration()).thenReturn(57600000L);
+        when(stats.getSumDurationSq()).thenReturn(1.6588800E15);
+        when(stats.getSumCycles()).thenReturn(10L);
+        when(stats.getSumCyclesSq()).thenReturn(50L);
+        when(stats.getSumDurationCycles()).thenReturn(288000000L);
+        when(stats.getBadSessions()).thenReturn(null);
+        when(bucketRepository.durationStatsSince(1, LocalDate.of(2024, 5, 15))).thenReturn(stats);
+
+        DurationStatsDto statsDto = statsService.getDurationStatsSince(1, testSession.getStartTime());
+
+        assertEquals(2, statsDto.getSessionCount());
+        assertEquals(57600000L, statsDto.getSumDuration());
+        assertEquals(1.6588800E15, statsDto.getSumDurationSq());
+        assertEquals(10, statsDto.getSumCycles());
+        assertEquals(50, statsDto.getSumCyclesSq());
+        assertEquals(288000000L, statsDto.getSumDurationCycles());
+        assertEquals(0, statsDto.getBadSessions());
+    }
+
+    @Test
+    void rebuildIfEmptyOnlyRebuildsWhenNeeded() {
+        when(bucketRepository.needsRebuild()).thenReturn(false);
+        statsService.rebuildIfEmpty();
+        verify(bucketRepository, never()).rebuildFromSessions();
+
+        when(bucketRepository.needsRebuild()).thenReturn(true);
+        statsService.rebuildIfEmpty();
+        verify(bucketRepository, times(1)).deleteAllBuckets();
+        verify(bucketRepository, times(1)).rebuildFromSessions();
+    }
+}